@@ -0,0 +1,29 @@
+package space.alula.tapebot.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results reported next to ops/s, normalized to the same time unit: PCM samples and megabytes
+ * of input handled. JMH sums them up across threads, divide by the thread count for per-thread numbers.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counters {
+    public long samples;
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        samples = 0;
+        megabytes = 0;
+    }
+
+    void add(long samples, long bytes) {
+        this.samples += samples;
+        this.megabytes += bytes / 1e6;
+    }
+}
@@ -0,0 +1,83 @@
+package space.alula.tapebot.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import space.alula.tapebot.DFPWM;
+import space.alula.tapebot.DFPWMEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes one second of 48 kHz audio per operation. Codec state carries over between operations,
+ * like it does between frames of a conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DFPWMBenchmark {
+    @Param({"sweep", "noise", "silence", "music"})
+    public String signal;
+
+    private byte[] pcm;
+    private byte[] dfpwm;
+    private byte[] decoded;
+    private DFPWM reference;
+    private DFPWMEncoder encoder1a;
+    private DFPWMEncoder encoderLegacy;
+    private DFPWM decoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pcm = Signals.eightBit(signal, 1);
+        dfpwm = new byte[pcm.length / 8];
+        decoded = new byte[pcm.length];
+        reference = new DFPWM(true);
+        encoder1a = DFPWMEncoder.create(true);
+        encoderLegacy = DFPWMEncoder.create(false);
+        decoder = new DFPWM(true);
+
+        // decompress gets real encoder output rather than whatever is left in the buffer
+        DFPWMEncoder.create(true).compress(dfpwm, pcm, 0, 0, dfpwm.length);
+    }
+
+    @Benchmark
+    public byte[] compressReference(Counters counters) {
+        reference.compress(dfpwm, pcm, 0, 0, dfpwm.length);
+        counters.add(pcm.length, pcm.length);
+        return dfpwm;
+    }
+
+    @Benchmark
+    public byte[] compress1a(Counters counters) {
+        encoder1a.compress(dfpwm, pcm, 0, 0, dfpwm.length);
+        counters.add(pcm.length, pcm.length);
+        return dfpwm;
+    }
+
+    @Benchmark
+    public byte[] compressLegacy(Counters counters) {
+        encoderLegacy.compress(dfpwm, pcm, 0, 0, dfpwm.length);
+        counters.add(pcm.length, pcm.length);
+        return dfpwm;
+    }
+
+    @Benchmark
+    public byte[] decompress(Counters counters) {
+        decoder.decompress(decoded, dfpwm, 0, 0, dfpwm.length);
+        counters.add(decoded.length, dfpwm.length);
+        return decoded;
+    }
+}
@@ -0,0 +1,81 @@
+package space.alula.tapebot.bench;
+
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import space.alula.tapebot.PcmFrontEnd;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the S16LE to 8-bit conversion of the converter over one second of lavaplayer-sized frames per operation.
+ * {@code highByte} is the old left channel only conversion at 48 kHz, kept as a baseline for {@link PcmFrontEnd}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({"sweep", "noise", "silence", "music"})
+    public String signal;
+
+    @Param({"48000", "32768"})
+    public int sampleRate;
+
+    private ByteBuffer[] frames;
+    private ShortBuffer[] views;
+    private PcmFrontEnd frontEnd;
+    private byte[] eightBit;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var s16le = Signals.s16le(signal, 1);
+        var frameSize = StandardAudioDataFormats.DISCORD_PCM_S16_LE.maximumChunkSize();
+        frames = new ByteBuffer[s16le.length / frameSize];
+        views = new ShortBuffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ByteBuffer.wrap(s16le, i * frameSize, frameSize).slice().order(ByteOrder.LITTLE_ENDIAN);
+            views[i] = frames[i].asShortBuffer();
+        }
+        frontEnd = new PcmFrontEnd(sampleRate);
+        eightBit = new byte[frontEnd.maxOutput(frameSize / 4)];
+    }
+
+    @Benchmark
+    public byte[] highByte(Counters counters) {
+        int samples = frames[0].capacity() / 4;
+        for (var frame : frames) {
+            for (int i = 0; i < samples; i++) {
+                eightBit[i] = frame.get(i * 4 + 1);
+            }
+        }
+        counters.add((long) frames.length * samples, (long) frames.length * frames[0].capacity());
+        return eightBit;
+    }
+
+    @Benchmark
+    public byte[] fused(Counters counters) {
+        int samples = frames[0].capacity() / 4;
+        long written = 0;
+        for (var view : views) {
+            written += frontEnd.process(view, samples, eightBit);
+        }
+        counters.add(written, (long) frames.length * frames[0].capacity());
+        return eightBit;
+    }
+}
@@ -0,0 +1,56 @@
+package space.alula.tapebot.bench;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the selected benchmarks at 1, 2, 4... threads up to the core count and prints samples/s and MB/s,
+ * both in total and per thread.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar space.alula.tapebot.bench.ScalingReport [benchmark regex]}
+ */
+public class ScalingReport {
+    private ScalingReport() {
+        //
+    }
+
+    public static void main(String... args) throws RunnerException {
+        var include = args.length > 0 ? args[0] : "space.alula.tapebot.bench.*";
+        var cores = Runtime.getRuntime().availableProcessors();
+
+        var threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        var results = new ArrayList<RunResult>();
+        for (var threads : threadCounts) {
+            results.addAll(new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .build()).run());
+        }
+
+        print(results);
+    }
+
+    private static void print(List<RunResult> results) {
+        System.out.printf("%n%-50s %-8s %7s %16s %16s %12s %12s%n",
+                "Benchmark", "Signal", "Threads", "Samples/s", "Samples/s/thr", "MB/s", "MB/s/thr");
+        for (var result : results) {
+            var params = result.getParams();
+            var threads = params.getThreads();
+            var samples = result.getSecondaryResults().get("samples").getScore();
+            var megabytes = result.getSecondaryResults().get("megabytes").getScore();
+            System.out.printf("%-50s %-8s %7d %16.0f %16.0f %12.2f %12.2f%n",
+                    params.getBenchmark(), params.getParam("signal"), threads,
+                    samples, samples / threads, megabytes, megabytes / threads);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package space.alula.tapebot.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test signals for the benchmarks, as 48 kHz stereo S16LE PCM (what lavaplayer hands to the converter) or as
+ * signed 8-bit mono PCM (what the encoder consumes).
+ * <p>
+ * {@code music} is read from the raw 48 kHz stereo S16LE file set with {@code -Dtapebot.music=<path>}, e.g. made with
+ * {@code ffmpeg -i song.mp3 -f s16le -ar 48000 -ac 2 music.raw}. Without it a synthetic mix is used instead.
+ */
+final class Signals {
+    static final int SAMPLE_RATE = 48000;
+
+    private Signals() {
+        //
+    }
+
+    static byte[] s16le(String signal, int seconds) {
+        int samples = SAMPLE_RATE * seconds;
+        var buffer = ByteBuffer.allocate(samples * 4).order(ByteOrder.LITTLE_ENDIAN);
+        if (signal.equals("music")) {
+            var music = loadMusic();
+            if (music != null) {
+                while (buffer.hasRemaining()) {
+                    buffer.put(music, 0, Math.min(music.length, buffer.remaining()));
+                }
+                return buffer.array();
+            }
+        }
+
+        var random = new Random(0);
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double left;
+            double right;
+            switch (signal) {
+                case "sweep":
+                    // logarithmic sweep from 20 Hz to 20 kHz over the whole signal
+                    phase += 2 * Math.PI * 20 * Math.pow(1000, t / seconds) / SAMPLE_RATE;
+                    left = right = 0.8 * Math.sin(phase);
+                    break;
+                case "noise":
+                    left = random.nextGaussian() * 0.25;
+                    right = random.nextGaussian() * 0.25;
+                    break;
+                case "silence":
+                    left = right = 0;
+                    break;
+                case "music":
+                    // a chord progression with a decaying envelope per beat, some hi-hat noise and a bass line
+                    double beat = t * 2 % 1;
+                    double root = 110 * Math.pow(2, new int[]{0, 5, 7, 3}[(int) (t / 2) % 4] / 12.0);
+                    double chord = Math.sin(2 * Math.PI * root * 2 * t) + Math.sin(2 * Math.PI * root * 2.52 * t)
+                            + Math.sin(2 * Math.PI * root * 3 * t);
+                    double bass = Math.sin(2 * Math.PI * root / 2 * t);
+                    double hat = beat % 0.25 < 0.02 ? random.nextGaussian() * 0.3 : 0;
+                    left = 0.15 * chord * Math.exp(-3 * beat) + 0.3 * bass + hat;
+                    right = 0.12 * chord * Math.exp(-3 * beat) + 0.3 * bass + hat * 0.7;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown signal " + signal);
+            }
+            buffer.putShort(toShort(left));
+            buffer.putShort(toShort(right));
+        }
+        return buffer.array();
+    }
+
+    static byte[] eightBit(String signal, int seconds) {
+        var s16le = s16le(signal, seconds);
+        var pcm = new byte[s16le.length / 4];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = s16le[i * 4 + 1];
+        }
+        return pcm;
+    }
+
+    private static short toShort(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value * Short.MAX_VALUE)));
+    }
+
+    private static byte[] loadMusic() {
+        var path = System.getProperty("tapebot.music");
+        if (path == null) {
+            System.err.println("tapebot.music is not set, using a synthetic mix for the music signal.");
+            return null;
+        }
+
+        try {
+            var data = Files.readAllBytes(Path.of(path));
+            return data.length < 4 ? null : Arrays.copyOf(data, data.length & ~3);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the music fixture " + path, e);
+        }
+    }
+}
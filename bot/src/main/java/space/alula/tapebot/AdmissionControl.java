@@ -0,0 +1,153 @@
+package space.alula.tapebot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new conversion may be queued. Every user and every guild gets a rate limit with some burst,
+ * and the estimated output size of all admitted conversions has to fit into a global budget until they finish.
+ * <p>
+ * Rate limits are kept as the theoretical arrival time of the next request (GCRA), a single {@link AtomicLong}
+ * per user or guild which is updated with compare-and-set, so admission never takes a lock.
+ */
+public class AdmissionControl {
+    // buckets of users and guilds who haven't converted anything in a while are dropped past this many
+    private static final int cleanupThreshold = 4096;
+    private static final long busyRetry = TimeUnit.SECONDS.toMillis(30);
+
+    private final Limit userLimit;
+    private final Limit guildLimit;
+    private final long budget;
+    private final AtomicLong reserved = new AtomicLong();
+
+    public AdmissionControl(Limit userLimit, Limit guildLimit, long budget) {
+        this.userLimit = userLimit;
+        this.guildLimit = guildLimit;
+        this.budget = budget;
+    }
+
+    /**
+     * Takes a token from both the user and the guild and reserves the estimated size of the output.
+     *
+     * @throws Rejected if either rate limit is exceeded or the budget is used up
+     */
+    public Permit admit(long guildId, long userId, long estimatedBytes) {
+        long now = System.currentTimeMillis();
+        long wait = userLimit.acquire(userId, now);
+        if (wait > 0) {
+            throw new Rejected("You're converting too much, try again in `" + StringUtil.prettyPeriod(wait) + "`.", wait);
+        }
+
+        wait = guildLimit.acquire(guildId, now);
+        if (wait > 0) {
+            userLimit.refund(userId);
+            throw new Rejected("This server is converting too much, try again in `" + StringUtil.prettyPeriod(wait) + "`.", wait);
+        }
+
+        // a single conversion larger than the whole budget still gets in once nothing else is running
+        long bytes = Math.min(estimatedBytes, budget);
+        while (true) {
+            long current = reserved.get();
+            if (current + bytes > budget) {
+                userLimit.refund(userId);
+                guildLimit.refund(guildId);
+                throw new Rejected("The bot is busy right now, try again in a few minutes!", busyRetry);
+            }
+            if (reserved.compareAndSet(current, current + bytes)) {
+                return new Permit(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return estimated output size of the admitted conversions which haven't finished yet
+     */
+    public long reserved() {
+        return reserved.get();
+    }
+
+    public long budget() {
+        return budget;
+    }
+
+    public class Permit {
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Gives the reserved bytes back to the budget, only the first call has any effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                reserved.addAndGet(-bytes);
+            }
+        }
+    }
+
+    public static class Rejected extends RejectedExecutionException {
+        private final long retryAfter;
+
+        public Rejected(String message, long retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @return milliseconds after which the request would likely be admitted
+         */
+        public long retryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Rate limit of a single kind of key, {@code burst} requests at once and then one every {@code interval}.
+     */
+    public static class Limit {
+        private final long interval;
+        private final long burst;
+        private final Map<Long, AtomicLong> arrivals = new ConcurrentHashMap<>();
+
+        public Limit(long perHour, long burst) {
+            this.interval = TimeUnit.HOURS.toMillis(1) / Math.max(perHour, 1);
+            this.burst = Math.max(burst, 1);
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise milliseconds until one is available
+         */
+        private long acquire(long key, long now) {
+            if (arrivals.size() > cleanupThreshold) {
+                arrivals.values().removeIf(arrival -> arrival.get() < now);
+            }
+
+            var arrival = arrivals.computeIfAbsent(key, k -> new AtomicLong(now));
+            while (true) {
+                long current = arrival.get();
+                long next = Math.max(current, now) + interval;
+                long wait = next - now - burst * interval;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void refund(long key) {
+            var arrival = arrivals.get(key);
+            if (arrival != null) {
+                arrival.addAndGet(-interval);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.local.LocalAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts local audio files to DFPWM without connecting to Discord, one file per fork-join task.
+ * <p>
+ * Usage: {@code java -jar tapebot.jar convert [options] <files or directories...>}, see {@link #usage()}.
+ * Directories are searched recursively and their layout is kept in the output directory.
+ */
+public class BatchCli {
+    private static final Set<String> extensions = Set.of("mp3", "flac", "wav", "ogg", "opus", "m4a", "mp4", "aac",
+            "webm", "mkv", "mka");
+
+    private final AudioPlayerManager manager;
+    private final ConversionOptions options;
+    private final Path output;
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong audioMillis = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+
+    private BatchCli(ConversionOptions options, Path output) {
+        this.options = options;
+        this.output = output;
+        this.manager = new DefaultAudioPlayerManager();
+        manager.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_PCM_S16_LE);
+        manager.setFrameBufferDuration(500);
+        manager.registerSourceManager(new LocalAudioSourceManager());
+    }
+
+    public static void main(String... args) throws IOException {
+        var defaults = ConversionOptions.defaults();
+        var newDfpwm = defaults.newDfpwm();
+        var segmented = defaults.segmented();
+        var sampleRate = defaults.sampleRate();
+        var verify = defaults.verify();
+        var threads = Runtime.getRuntime().availableProcessors();
+        Path output = null;
+        var inputs = new ArrayList<Path>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o":
+                        output = Path.of(value(args, ++i));
+                        break;
+                    case "-j":
+                        threads = number(args, ++i);
+                        break;
+                    case "-r":
+                        sampleRate = number(args, ++i);
+                        break;
+                    case "--legacy":
+                        newDfpwm = false;
+                        break;
+                    case "--segmented":
+                        segmented = true;
+                        break;
+                    case "--verify":
+                        verify = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                        }
+                        inputs.add(Path.of(args[i]));
+                        break;
+                }
+            }
+            if (inputs.isEmpty()) {
+                throw new IllegalArgumentException("Nothing to convert.");
+            }
+            if (!PcmFrontEnd.supports(sampleRate)) {
+                throw new IllegalArgumentException("Sample rate of " + sampleRate + " Hz is not supported, use one like 32768 or 44100.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        var cli = new BatchCli(new ConversionOptions(newDfpwm, segmented, sampleRate, verify), output);
+        var pool = new ForkJoinPool(threads);
+        try {
+            cli.run(inputs, pool);
+        } finally {
+            pool.shutdown();
+            cli.manager.shutdown();
+        }
+
+        // lets scripts tell whether everything got converted
+        if (cli.failed.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value.");
+        }
+        return args[i];
+    }
+
+    private static int number(String[] args, int i) {
+        var value = value(args, i);
+        try {
+            var number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(args[i - 1] + " needs a positive number, not " + value + ".");
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java -jar tapebot.jar convert [options] <files or directories...>");
+        System.out.println("  -o <dir>     where to write the .dfpwm files, next to the inputs by default");
+        System.out.println("  -j <n>       number of files converted at once, all cores by default");
+        System.out.println("  -r <rate>    output sample rate up to 48000, SAMPLE_RATE or 32768 by default");
+        System.out.println("  --legacy     use the original DFPWM codec instead of DFPWM1a");
+        System.out.println("  --segmented  encode every file on multiple threads");
+        System.out.println("  --verify     decode the output again and report its SNR");
+    }
+
+    private void run(List<Path> inputs, ForkJoinPool pool) throws IOException {
+        var jobs = new ArrayList<Job>();
+        for (var input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> files = Files.walk(input)) {
+                    for (var file : files.filter(BatchCli::isAudioFile).collect(Collectors.toList())) {
+                        jobs.add(new Job(file, target(input, input.relativize(file))));
+                    }
+                }
+            } else {
+                jobs.add(new Job(input, target(input.toAbsolutePath().getParent(), input.getFileName())));
+            }
+        }
+
+        System.out.printf("Converting %d files with %d threads, %s%n", jobs.size(), pool.getParallelism(),
+                options.describe());
+        long start = System.nanoTime();
+        var tasks = jobs.stream().map(job -> pool.submit(() -> convert(job))).collect(Collectors.toList());
+        tasks.forEach(ForkJoinTask::join);
+        long wall = System.nanoTime() - start;
+
+        double seconds = wall / 1e9;
+        System.out.printf("%nConverted %d files, %d failed, in %.1f s%n", converted.get(), failed.get(), seconds);
+        System.out.printf("  audio: %s, %.1fx realtime%n", StringUtil.prettyPeriod(audioMillis.get()),
+                audioMillis.get() / 1000.0 / seconds);
+        System.out.printf("  output: %.2f MiB, %.2f MiB/s%n", outputBytes.get() / 1048576.0,
+                outputBytes.get() / 1048576.0 / seconds);
+        System.out.printf("  encoder: %d samples/s per thread, %d samples/s overall%n", Metrics.encodeThroughput(),
+                (long) (Metrics.encodedSamples.sum() / seconds));
+    }
+
+    private Path target(Path base, Path relative) {
+        var name = relative.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        var dfpwm = (dot > 0 ? name.substring(0, dot) : name) + ".dfpwm";
+        var parent = relative.getParent();
+        if (output == null) {
+            return base.resolve(relative).resolveSibling(dfpwm);
+        }
+        return (parent != null ? output.resolve(parent) : output).resolve(dfpwm);
+    }
+
+    private static boolean isAudioFile(Path file) {
+        var name = file.getFileName().toString().toLowerCase();
+        var dot = name.lastIndexOf('.');
+        return Files.isRegularFile(file) && dot > 0 && extensions.contains(name.substring(dot + 1));
+    }
+
+    private void convert(Job job) {
+        long start = System.nanoTime();
+        try {
+            var track = load(job.input);
+            Files.createDirectories(job.target.getParent());
+
+            // written next to the target first, so interrupted runs don't leave truncated files behind
+            var temporary = job.target.resolveSibling(job.target.getFileName() + ".tmp");
+            try (var out = new BufferedOutputStream(Files.newOutputStream(temporary), 65536)) {
+                ConverterThread.convert(manager, track, options, out, position -> {
+                });
+            } catch (Exception e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, job.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            var size = Files.size(job.target);
+            converted.incrementAndGet();
+            audioMillis.addAndGet(track.getDuration());
+            outputBytes.addAndGet(size);
+            System.out.printf("%s -> %s (%d KiB, %.1f s)%n", job.input, job.target, size / 1024,
+                    (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.printf("%s: %s%n", job.input, e);
+        }
+    }
+
+    private AudioTrack load(Path file) throws Exception {
+        var result = new CompletableFuture<AudioTrack>();
+        manager.loadItem(file.toAbsolutePath().toString(), new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                result.complete(track);
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                result.completeExceptionally(new IOException("Not a single track."));
+            }
+
+            @Override
+            public void noMatches() {
+                result.completeExceptionally(new IOException("Unsupported file."));
+            }
+
+            @Override
+            public void loadFailed(FriendlyException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static class Job {
+        private final Path input;
+        private final Path target;
+
+        private Job(Path input, Path target) {
+            this.input = input;
+            this.target = target;
+        }
+    }
+}
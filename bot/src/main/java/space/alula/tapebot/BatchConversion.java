@@ -0,0 +1,178 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Converts several tracks for a single command. All queries are resolved concurrently, at most {@code BATCH_WINDOW}
+ * of the tracks are being converted at a time, and the results are delivered in the order they were requested in.
+ */
+public class BatchConversion {
+    private static final Logger logger = LoggerFactory.getLogger(BatchConversion.class);
+    static final int window = Integer.parseInt(Env.getOrDefault("BATCH_WINDOW", "2"));
+    static final int maxTracks = Integer.parseInt(Env.getOrDefault("BATCH_MAX_TRACKS", "25"));
+    // tracks which weren't admitted are retried later, unless that would take longer than this
+    private static final long maxDeferral = TimeUnit.MINUTES.toMillis(10);
+
+    private final CommandContext ctx;
+    private final List<AudioTrack> tracks;
+    private final ConversionOptions options;
+    private final List<CompletableFuture<Path>> results;
+    // set before the result completes, released once the file has been sent
+    private final ConversionTicket[] tickets;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger converted = new AtomicInteger();
+
+    private BatchConversion(CommandContext ctx, List<AudioTrack> tracks, ConversionOptions options) {
+        this.ctx = ctx;
+        this.tracks = tracks;
+        this.options = options;
+        this.results = tracks.stream().map(track -> new CompletableFuture<Path>()).collect(Collectors.toList());
+        this.tickets = new ConversionTicket[tracks.size()];
+    }
+
+    /**
+     * Splits the entries on {@code |}. Without one, a list of plain URLs is split on whitespace, anything else is a
+     * single query.
+     */
+    public static List<String> parse(String args) {
+        String[] entries;
+        if (args.contains("|")) {
+            entries = args.split("\\|");
+        } else {
+            var words = args.trim().split("\\s+");
+            var urls = Arrays.stream(words).allMatch(word -> word.startsWith("http://") || word.startsWith("https://"));
+            entries = urls ? words : new String[]{args};
+        }
+        return Arrays.stream(entries)
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves all queries concurrently. Queries which can't be resolved are left out and mentioned in the notes.
+     *
+     * @return tracks of all queries, in order
+     */
+    static CompletionStage<List<AudioTrack>> resolve(List<String> queries, StringBuilder notes) {
+        var lookups = queries.stream()
+                .map(query -> MusicResolver.resolveAll(query).toCompletableFuture())
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).handle((ignored, e) -> {
+            var tracks = new ArrayList<AudioTrack>();
+            for (int i = 0; i < lookups.size(); i++) {
+                var lookup = lookups.get(i);
+                if (lookup.isCompletedExceptionally()) {
+                    notes.append("\nCould not resolve `").append(StringUtil.codeEscape(queries.get(i))).append("`.");
+                } else {
+                    tracks.addAll(lookup.join());
+                }
+            }
+            return tracks;
+        });
+    }
+
+    public static void start(CommandContext ctx, List<String> queries, long maxDuration) {
+        var notes = new StringBuilder();
+        resolve(queries, notes).thenAccept(tracks -> {
+            var tooLong = tracks.removeIf(track -> track.getDuration() > TimeUnit.MINUTES.toMillis(maxDuration));
+            if (tooLong) {
+                notes.append("\nSkipped tracks longer than ").append(maxDuration).append(" minutes.");
+            }
+            if (tracks.size() > maxTracks) {
+                notes.append("\nOnly the first ").append(maxTracks).append(" tracks are going to be converted.");
+                tracks.subList(maxTracks, tracks.size()).clear();
+            }
+
+            if (tracks.isEmpty()) {
+                ctx.error("There's nothing to convert." + notes);
+                return;
+            }
+
+            ctx.success("Converting `" + tracks.size() + "` tracks, you'll get them in order as they're done." + notes);
+            var batch = new BatchConversion(ctx, tracks, ConversionOptions.defaults());
+            batch.run().thenRun(() -> ctx.success(ctx.sender().asMention() + ", batch finished, converted `"
+                    + batch.converted.get() + "` of `" + tracks.size() + "` tracks."));
+        }).exceptionally(e -> {
+            logger.error("Batch conversion failed!", e);
+            ctx.error("Error while converting the tracks: `" + e.getMessage() + "`");
+            return null;
+        });
+    }
+
+    private CompletionStage<Void> run() {
+        for (int i = 0; i < Math.min(window, tracks.size()); i++) {
+            submitNext();
+        }
+
+        // deliveries are chained, so a fast conversion waits for the slower ones queued before it
+        CompletionStage<Void> delivered = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < tracks.size(); i++) {
+            int index = i;
+            var track = tracks.get(i);
+            var result = results.get(i);
+            delivered = delivered
+                    .thenCompose(ignored -> result.handle((file, e) -> {
+                        if (e != null) {
+                            return ctx.error("`" + StringUtil.codeEscape(track.getInfo().title) + "`: "
+                                    + Commands.failureMessage(e));
+                        }
+                        converted.incrementAndGet();
+                        return ConverterThread.deliver(ctx, track, file.toFile())
+                                .whenComplete((message, ex) -> tickets[index].release());
+                    }).thenCompose(message -> message))
+                    .handle((message, e) -> null);
+        }
+        return delivered;
+    }
+
+    // keeps the window full, each finished conversion queues the next track
+    private void submitNext() {
+        int index = next.getAndIncrement();
+        if (index < tracks.size()) {
+            submit(index);
+        }
+    }
+
+    private void submit(int index) {
+        var result = results.get(index);
+        try {
+            var ticket = Conversions.submit(ctx.guild().idAsLong(), ctx.message().channelIdAsLong(),
+                    ctx.sender().idAsLong(), tracks.get(index), options);
+            tickets[index] = ticket;
+            ticket.result().whenComplete((file, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(file);
+                }
+                submitNext();
+            });
+        } catch (AdmissionControl.Rejected e) {
+            if (e.retryAfter() > maxDeferral) {
+                result.completeExceptionally(e);
+                submitNext();
+                return;
+            }
+            // holds its place in the window until it gets in
+            ctx.vertx().setTimer(e.retryAfter(), id -> submit(index));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            submitNext();
+        }
+    }
+}
@@ -9,4 +9,9 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface Command {
     String name() default "";
+
+    /**
+     * Whether the command may block, in which case it runs on a worker thread instead of the event loop.
+     */
+    boolean blocking() default true;
 }
@@ -22,9 +22,9 @@ public class CommandContext {
     private final Message message;
     private volatile Message lastMessage;
 
-    public CommandContext(Message message, List<String> parts) {
+    public CommandContext(Message message, List<String> args) {
         this.message = message;
-        this.args = parts.stream().skip(1).collect(Collectors.toList());
+        this.args = args;
     }
 
     public int argCount() {
@@ -0,0 +1,182 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.Catnip;
+import com.mewna.catnip.entity.message.Message;
+import com.mewna.catnip.shard.DiscordEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class CommandHandler {
+    private static final Logger logger = LoggerFactory.getLogger(CommandHandler.class);
+    private static final String DEFAULT_PREFIX = "tape ";
+    private static final AtomicInteger invokedCommands = new AtomicInteger();
+
+    // there's only a handful of commands, scanning them beats hashing a substring of every message
+    private volatile RegisteredCommand[] commands = new RegisteredCommand[0];
+    private String selfMention;
+    private String selfNickMention;
+
+    public CommandHandler(Catnip catnip) {
+        catnip.on(DiscordEvent.MESSAGE_CREATE, this::handleMessage);
+    }
+
+    public static int getInvokedCommands() {
+        return invokedCommands.get();
+    }
+
+    public void registerCommands(Class cls) {
+        var methods = Objects.requireNonNull(cls).getDeclaredMethods();
+        var registered = new ArrayList<>(Arrays.asList(commands));
+        for (Method method : methods) {
+            if (isCommandMethod(method)) {
+                try {
+                    var annotation = method.getAnnotation(Command.class);
+                    var name = annotation.name().isBlank() ? method.getName() : annotation.name();
+                    registered.add(new RegisteredCommand(name.toLowerCase(), bind(method), annotation.blocking()));
+                    logger.debug("Registered command {} -> {}", name, method);
+                } catch (Throwable e) {
+                    logger.error("Failed to register method {} as a command!", method, e);
+                }
+            }
+        }
+        commands = registered.toArray(new RegisteredCommand[0]);
+    }
+
+    private boolean isCommandMethod(Method method) {
+        return method.isAnnotationPresent(Command.class)
+                && Modifier.isStatic(method.getModifiers())
+                && method.getParameterCount() == 1
+                && method.getParameterTypes()[0].equals(CommandContext.class);
+    }
+
+    // spins up a Consumer calling the method directly, so invoking it costs the same as a lambda call
+    @SuppressWarnings("unchecked")
+    private static Consumer<CommandContext> bind(Method method) throws Throwable {
+        var lookup = MethodHandles.lookup();
+        var site = LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(Consumer.class),
+                MethodType.methodType(void.class, Object.class),
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, CommandContext.class));
+        return (Consumer<CommandContext>) site.getTarget().invokeExact();
+    }
+
+    private void handleMessage(Message message) {
+        if (!message.channel().isGuild() || message.author().bot()) return;
+
+        if (selfMention == null || selfNickMention == null) {
+            var id = message.catnip().clientIdAsLong();
+            selfMention = "<@" + id + ">";
+            selfNickMention = "<@!" + id + ">";
+        }
+
+        var content = message.content();
+        int start;
+        if (content.startsWith(DEFAULT_PREFIX)) {
+            start = DEFAULT_PREFIX.length();
+        } else if (content.startsWith(selfMention)) {
+            start = selfMention.length();
+        } else if (content.startsWith(selfNickMention)) {
+            start = selfNickMention.length();
+        } else {
+            return;
+        }
+
+        start = skipWhitespace(content, start);
+        int end = skipToken(content, start);
+        var command = find(content, start, end);
+        if (command == null) return;
+
+        invokedCommands.incrementAndGet();
+        var ctx = new CommandContext(message, tokenize(content, end));
+        if (!command.blocking) {
+            // already on the event loop
+            try {
+                command.handler.accept(ctx);
+            } catch (Throwable e) {
+                logFailure(message, e);
+            }
+            return;
+        }
+
+        // unordered, otherwise blocking commands coming from the same event loop would wait for each other
+        message.catnip().vertx().executeBlocking(handler -> {
+            command.handler.accept(ctx);
+            handler.complete();
+        }, false, result -> {
+            if (result.failed()) {
+                logFailure(message, result.cause());
+            }
+        });
+    }
+
+    private RegisteredCommand find(String content, int start, int end) {
+        int length = end - start;
+        if (length == 0) return null;
+
+        for (var command : commands) {
+            if (command.name.length() == length && content.regionMatches(true, start, command.name, 0, length)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> tokenize(String content, int from) {
+        var args = new ArrayList<String>();
+        int start = skipWhitespace(content, from);
+        while (start < content.length()) {
+            int end = skipToken(content, start);
+            args.add(content.substring(start, end));
+            start = skipWhitespace(content, end);
+        }
+        return args;
+    }
+
+    private static int skipWhitespace(String content, int index) {
+        while (index < content.length() && Character.isWhitespace(content.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipToken(String content, int index) {
+        while (index < content.length() && !Character.isWhitespace(content.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static void logFailure(Message message, Throwable cause) {
+        logger.error("Command invocation failed! [{}] (U:{}, G:{}, C/M:{}/{})",
+                message.content(),
+                message.author().idAsLong(),
+                message.guildIdAsLong(),
+                message.channelIdAsLong(), message.idAsLong(),
+                cause);
+    }
+
+    private static class RegisteredCommand {
+        private final String name;
+        private final Consumer<CommandContext> handler;
+        private final boolean blocking;
+
+        private RegisteredCommand(String name, Consumer<CommandContext> handler, boolean blocking) {
+            this.name = name;
+            this.handler = handler;
+            this.blocking = blocking;
+        }
+    }
+}
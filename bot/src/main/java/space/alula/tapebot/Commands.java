@@ -0,0 +1,328 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.entity.builder.EmbedBuilder;
+import com.mewna.catnip.entity.message.Message;
+import com.mewna.catnip.entity.message.MessageOptions;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+public class Commands {
+    private Commands() {
+        //
+    }
+
+    static final int maxTrackDuration = 30;
+    private static final int maxVariants = 4;
+    private static final Runtime rt = Runtime.getRuntime();
+
+    @Command
+    public static void convert(CommandContext ctx) {
+        var query = new ArrayList<String>();
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        var defaults = ConversionOptions.defaults();
+        List<Boolean> codecs = List.of(defaults.newDfpwm());
+        List<Integer> rates = List.of(defaults.sampleRate());
+        for (int i = 0; i < ctx.argCount(); i++) {
+            var arg = ctx.arg(i);
+            if ((arg.equalsIgnoreCase("--from") || arg.equalsIgnoreCase("--to")) && i + 1 < ctx.argCount()) {
+                try {
+                    var time = StringUtil.parseTime(ctx.arg(++i));
+                    if (arg.equalsIgnoreCase("--from")) {
+                        from = time;
+                    } else {
+                        to = time;
+                    }
+                } catch (IllegalArgumentException e) {
+                    ctx.error("`" + StringUtil.codeEscape(ctx.arg(i)) + "` is not a valid time, use `[h:]m:ss`!");
+                    return;
+                }
+            } else if (arg.equalsIgnoreCase("--codec") && i + 1 < ctx.argCount()) {
+                codecs = new ArrayList<>();
+                for (var codec : ctx.arg(++i).split(",")) {
+                    if (!codec.equalsIgnoreCase("dfpwm") && !codec.equalsIgnoreCase("dfpwm1a")) {
+                        ctx.error("`" + StringUtil.codeEscape(codec) + "` is not a codec, use `dfpwm` or `dfpwm1a`!");
+                        return;
+                    }
+                    codecs.add(codec.equalsIgnoreCase("dfpwm1a"));
+                }
+            } else if (arg.equalsIgnoreCase("--rate") && i + 1 < ctx.argCount()) {
+                rates = new ArrayList<>();
+                for (var rate : ctx.arg(++i).split(",")) {
+                    try {
+                        var sampleRate = Integer.parseInt(rate);
+                        if (!ConversionOptions.sampleRates.contains(sampleRate)) {
+                            throw new NumberFormatException();
+                        }
+                        rates.add(sampleRate);
+                    } catch (NumberFormatException e) {
+                        ctx.error("`" + StringUtil.codeEscape(rate) + "` is not a supported sample rate, use one of `"
+                                + ConversionOptions.sampleRates + "`!");
+                        return;
+                    }
+                }
+            } else {
+                query.add(arg);
+            }
+        }
+        if (from >= to) {
+            ctx.error("The clip has to end after it starts!");
+            return;
+        }
+
+        var variants = new ArrayList<ConversionOptions>();
+        for (var newDfpwm : codecs) {
+            for (var rate : rates) {
+                var options = new ConversionOptions(newDfpwm, defaults.segmented(), rate, defaults.verify()).clip(from, to);
+                if (variants.stream().noneMatch(variant -> variant.cacheKey().equals(options.cacheKey()))) {
+                    variants.add(options);
+                }
+            }
+        }
+        if (variants.size() > maxVariants) {
+            ctx.error("Cannot convert into more than " + maxVariants + " formats at once!");
+            return;
+        }
+
+        var options = variants.get(0);
+        ctx.message().channel().triggerTypingIndicator();
+        MusicResolver.resolve(String.join(" ", query))
+                .thenAccept(track -> {
+                    if (options.from() >= track.getDuration()) {
+                        throw new IllegalArgumentException("The track is only " + StringUtil.prettyPeriod(track.getDuration()) + " long!");
+                    }
+                    if (options.from() > 0 && !track.isSeekable()) {
+                        throw new IllegalArgumentException("This track can't be seeked, so it can't be clipped!");
+                    }
+                    if (options.length(track) > TimeUnit.MINUTES.toMillis(maxTrackDuration)) {
+                        throw new IllegalArgumentException("Cannot convert more than " + maxTrackDuration
+                                + " minutes at once, pick a part with `--from` and `--to`!");
+                    }
+
+                    var tickets = Conversions.submitAll(ctx.guild().idAsLong(), ctx.message().channelIdAsLong(),
+                            ctx.sender().idAsLong(), track, variants);
+                    // the variants are converted together, so any one of them tells how far along they are,
+                    // the status is only skipped if every one of them is cached
+                    var ticket = tickets.stream()
+                            .filter(t -> t.kind() == ConversionTicket.Kind.QUEUED)
+                            .findFirst()
+                            .or(() -> tickets.stream().filter(t -> t.kind() == ConversionTicket.Kind.ATTACHED).findFirst())
+                            .orElse(tickets.get(0));
+                    var title = StringUtil.codeEscape(track.getInfo().title);
+                    var eta = "estimated time to complete: `[" + StringUtil.prettyPeriod(options.length(track) / 10) + "]`.";
+                    CompletionStage<Message> status = null;
+                    switch (ticket.kind()) {
+                        case QUEUED:
+                            if (ticket.position() < Conversions.scheduler.idle()) {
+                                status = ctx.success("Started conversion of `" + title + "`, " + eta);
+                            } else {
+                                status = ctx.success("Queued conversion of `" + title + "`, position in queue: `#"
+                                        + (ticket.position() + 1) + "`, " + eta);
+                            }
+                            break;
+                        case ATTACHED:
+                            status = ctx.success("`" + title + "` is already being converted, you'll get it as soon as it's done.");
+                            break;
+                        default:
+                            break;
+                    }
+                    if (status != null) {
+                        status.thenAccept(message -> ProgressReporter.track(message, ticket.job()));
+                    }
+
+                    var results = tickets.stream().map(t -> t.result().toCompletableFuture()).collect(Collectors.toList());
+                    CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            // one failed variant fails the whole request, they'd usually all fail the same way
+                            ctx.error(failureMessage(e));
+                            tickets.forEach(ConversionTicket::release);
+                            return;
+                        }
+                        var files = results.stream().map(result -> result.join().toFile()).collect(Collectors.toList());
+                        ConverterThread.deliver(ctx, track, variants, files)
+                                .whenComplete((delivered, ex) -> tickets.forEach(ConversionTicket::release));
+                    });
+                })
+                .exceptionally(e -> {
+                    var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof RejectedExecutionException) {
+                        // queue full or not admitted, the message is meant for the user
+                        ctx.error(cause.getMessage());
+                    } else {
+                        ctx.error("Error while converting the track: `" + cause.getMessage() + "`");
+                    }
+                    return null;
+                });
+    }
+
+    @Command
+    public static void batch(CommandContext ctx) {
+        var queries = BatchConversion.parse(ctx.concatArgs());
+        if (queries.isEmpty()) {
+            ctx.error("Specify a playlist, some URLs, or queries separated by `|`!");
+            return;
+        }
+
+        ctx.message().channel().triggerTypingIndicator();
+        BatchConversion.start(ctx, queries, maxTrackDuration);
+    }
+
+    @Command
+    public static void image(CommandContext ctx) {
+        int minutes;
+        try {
+            minutes = ctx.argCount() > 0 ? Integer.parseInt(ctx.arg(0)) : -1;
+        } catch (NumberFormatException e) {
+            minutes = -1;
+        }
+
+        var queries = BatchConversion.parse(ctx.argsFrom(1));
+        if (minutes < 0 || queries.isEmpty()) {
+            ctx.error("Usage: `tape image <tape length in minutes> <playlist url|urls...|query | query...>`");
+            return;
+        }
+
+        ctx.message().channel().triggerTypingIndicator();
+        TapeImageBuilder.start(ctx, minutes, queries, maxTrackDuration);
+    }
+
+    @Command
+    public static void decode(CommandContext ctx) {
+        var attachment = ctx.message().attachments().stream()
+                .filter(file -> file.fileName().toLowerCase().endsWith(".dfpwm"))
+                .findFirst();
+        if (attachment.isEmpty()) {
+            ctx.error("Attach a `.dfpwm` file to decode! Usage: `tape decode [sample rate] [legacy]`");
+            return;
+        }
+
+        var sampleRate = ConversionOptions.defaults().sampleRate();
+        var newDfpwm = true;
+        for (int i = 0; i < ctx.argCount(); i++) {
+            if (ctx.arg(i).equalsIgnoreCase("legacy")) {
+                newDfpwm = false;
+            } else {
+                try {
+                    sampleRate = Integer.parseInt(ctx.arg(i));
+                } catch (NumberFormatException e) {
+                    ctx.error("`" + StringUtil.codeEscape(ctx.arg(i)) + "` is neither a sample rate nor `legacy`!");
+                    return;
+                }
+                if (!ConversionOptions.sampleRates.contains(sampleRate)) {
+                    ctx.error("`" + StringUtil.codeEscape(ctx.arg(i)) + "` is not a supported sample rate, use one of `"
+                            + ConversionOptions.sampleRates + "`!");
+                    return;
+                }
+            }
+        }
+
+        var file = attachment.get();
+        if (WavDecoder.HEADER_SIZE + (long) file.size() * 8 > ConverterThread.uploadLimit) {
+            ctx.error("That file is too big, the decoded one couldn't be uploaded!");
+            return;
+        }
+
+        ctx.message().channel().triggerTypingIndicator();
+        SpoolFile wav;
+        try {
+            wav = WavDecoder.download(file.url(), file.size(), newDfpwm, sampleRate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            ctx.error("Decoding failed: `" + e.getMessage() + "`");
+            return;
+        }
+
+        var name = file.fileName().substring(0, file.fileName().length() - ".dfpwm".length()) + ".wav";
+        ctx.send(new MessageOptions()
+                .content(CommandContext.SUCCESS_ICON + "  |  " + ctx.sender().asMention() + ", here you go:")
+                .addFile(name, wav.file()))
+                .whenComplete((message, e) -> wav.close());
+    }
+
+    static String failureMessage(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof TimeoutException) {
+            return "Conversion failed, track got stuck while converting.";
+        }
+        if (e instanceof RejectedExecutionException || e instanceof RemoteConversions.WorkerException) {
+            return e.getMessage();
+        }
+        if (e instanceof SpoolFile.LimitExceededException) {
+            return "Conversion failed, the file would be too big to upload.";
+        }
+        return "Conversion failed: `" + e.getMessage() + "`";
+    }
+
+    @Command(blocking = false)
+    public static void help(CommandContext ctx) {
+        ctx.send(new EmbedBuilder()
+                .title("TapeBot")
+                .description("A tiny Discord bot which converts music from YouTube and other sites to the DFPWM format " +
+                        "used in Computronics cassette tapes.\n\n" +
+
+                        "**Available commands:**\n\n" +
+                        "`tape help` - obvious, displays this help message\n" +
+                        "`tape convert <url|ytsearch:(your youtube query)> [--from 1:30] [--to 3:00] [--codec dfpwm1a,dfpwm] [--rate 32768,48000]` " +
+                        "- converts a track from any supported source to the DFPWM format, or just a part of it, in up to " + maxVariants +
+                        " formats at once.\n" +
+                        "`tape batch <playlist url|urls...|query | query...>` - converts a whole playlist or several tracks at once, " +
+                        "you get them in the same order.\n" +
+                        "`tape image <minutes> <playlist url|urls...|query | query...>` - puts several tracks onto a single tape " +
+                        "image, along with an index of where every track starts.\n" +
+                        "`tape decode [sample rate] [legacy]` - turns an attached DFPWM file back into a WAV file.\n" +
+                        "`tape stats` - displays some stats cuz why not\n" +
+                        "`tape ping` - pang\n")
+                .footer("made by Alula#0001, go yell at her if this meme breaks", null)
+                .build());
+    }
+
+    @Command(blocking = false)
+    public static void stats(CommandContext ctx) {
+        long total = rt.totalMemory() / 1048576;
+        long used = total - (rt.freeMemory() / 1048576);
+        ctx.send(new EmbedBuilder()
+                .title("Stats")
+                .description("Heap usage: " + String.format("`%d MiB` / `%d MiB`", used, total) + "\n" +
+                        "Converted tracks: `" + Metrics.conversions.sum() + "`\n" +
+                        "Commands executed: `" + CommandHandler.getInvokedCommands() + "`\n" +
+                        "Java version: `" + System.getProperty("java.version") + "`")
+                .field("Conversions", "Queued: `" + Conversions.scheduler.queued() + "`\n" +
+                        "Running: `" + Conversions.scheduler.active() + "` / `" + Conversions.scheduler.workers() + "`\n" +
+                        "Encoding speed: `" + Metrics.encodeThroughput() + "` samples/s\n" +
+                        "Failed: `" + Metrics.Failure.EXCEPTION.count() + "` errors, `" + Metrics.Failure.STUCK.count()
+                        + "` stuck, `" + Metrics.Failure.LIMIT.count() + "` too big", true)
+                .field("Caches", "Tracks: `" + Metrics.hitRate(Metrics.resolveCacheHits, Metrics.resolveCacheMisses) + "` hits\n" +
+                        "Conversions: `" + Metrics.hitRate(Metrics.conversionCacheHits, Metrics.conversionCacheMisses) + "` hits\n" +
+                        "Joined running conversions: `" + Metrics.attached.sum() + "`", true)
+                .field("Latency", "Resolve: " + Metrics.resolve.summary() + "\n" +
+                        "Download: " + Metrics.download.summary() + "\n" +
+                        "First frame: " + Metrics.firstFrame.summary() + "\n" +
+                        "Decode: " + Metrics.decode.summary() + "\n" +
+                        "Encode: " + Metrics.encode.summary() + "\n" +
+                        "Upload: " + Metrics.upload.summary(), false)
+                .build());
+    }
+
+    @Command(blocking = false)
+    public static void ping(CommandContext ctx) {
+        ctx.catnip().shardManager().latency(ctx.shard()).thenAccept(latency -> {
+            ctx.send("🏓  |  REST: `...ms` | Gateway: `...ms`").thenAccept(message -> {
+                long ping = ctx.message().creationTime().until(message.creationTime(), ChronoUnit.MILLIS);
+                message.edit("🏓  |  REST: `" + ping + "ms` | Gateway: `" + latency + "ms`");
+            });
+        });
+    }
+}
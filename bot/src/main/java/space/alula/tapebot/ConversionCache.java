@@ -0,0 +1,238 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of finished conversions, stored as one file per conversion named after the hash of the source track
+ * and the conversion options. The index is kept in memory and rebuilt from the directory listing on startup,
+ * least recently used files are evicted once the cache grows past its size budget.
+ * <p>
+ * Files handed out by {@link #get} and {@link #put} are pinned, they aren't evicted until they're released again
+ * with {@link #release}, once whoever got them is done sending them.
+ */
+public class ConversionCache {
+    private static final Logger logger = LoggerFactory.getLogger(ConversionCache.class);
+    private static final String EXTENSION = ".dfpwm";
+    // what SpoolFile.moveTo copies through when it can't move a file here directly
+    private static final String TEMPORARY_PREFIX = "tapebot-";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final Path directory;
+    private final long budget;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    // guards pins and eviction
+    private final Object evictionLock = new Object();
+
+    public ConversionCache(Path directory, long budget) throws IOException {
+        this.directory = directory;
+        this.budget = budget;
+
+        Files.createDirectories(directory);
+        try (var files = Files.newDirectoryStream(directory)) {
+            for (var file : files) {
+                var name = file.getFileName().toString();
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                if (name.startsWith(TEMPORARY_PREFIX) && name.endsWith(TEMPORARY_EXTENSION)) {
+                    // leftovers of interrupted copies
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!name.endsWith(EXTENSION)) {
+                    continue;
+                }
+
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                index.put(name.substring(0, name.length() - EXTENSION.length()),
+                        new Entry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                size.addAndGet(attributes.size());
+            }
+        }
+
+        logger.info("Loaded conversion cache with {} entries, {} MiB", index.size(), size.get() / 1048576);
+        evict();
+    }
+
+    public static String key(AudioTrack track, ConversionOptions options) {
+        var info = track.getInfo();
+        var source = track.getSourceManager() != null ? track.getSourceManager().getSourceName() : "";
+        var description = source + "\n" + info.identifier + "\n" + info.uri + "\n" + options.cacheKey();
+        try {
+            var hash = MessageDigest.getInstance("SHA-256").digest(description.getBytes(StandardCharsets.UTF_8));
+            var key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return cached conversion, pinned until it's {@link #release released}, or null if there is none
+     */
+    public Path get(String key) {
+        var entry = pinEntry(key);
+        if (entry == null) {
+            Metrics.conversionCacheMisses.increment();
+            return null;
+        }
+
+        var file = fileOf(key);
+        if (!Files.exists(file)) {
+            release(key);
+            remove(key, entry);
+            Metrics.conversionCacheMisses.increment();
+            return null;
+        }
+
+        Metrics.conversionCacheHits.increment();
+
+        entry.lastAccess = System.currentTimeMillis();
+        try {
+            // persists the access time for the next index rebuild
+            Files.setLastModifiedTime(file, FileTime.fromMillis(entry.lastAccess));
+        } catch (IOException e) {
+            logger.debug("Failed to touch cache file {}", file, e);
+        }
+        return file;
+    }
+
+    /**
+     * Moves the spooled output of a finished conversion into the cache.
+     *
+     * @return location of the cached file, pinned until it's {@link #release released}
+     */
+    public Path put(String key, SpoolFile spool) throws IOException {
+        var file = fileOf(key);
+        spool.moveTo(file);
+
+        var entry = new Entry(Files.size(file), System.currentTimeMillis());
+        entry.pins = 1;
+        Entry previous;
+        synchronized (evictionLock) {
+            previous = index.put(key, entry);
+            if (previous != null) {
+                // whoever pinned the old entry pinned the same file
+                entry.pins += previous.pins;
+            }
+        }
+        size.addAndGet(entry.size - (previous != null ? previous.size : 0));
+        evict();
+        return file;
+    }
+
+    /**
+     * Keeps a cached conversion from being evicted until it's {@link #release released}.
+     *
+     * @return false if it isn't cached (anymore)
+     */
+    public boolean pin(String key) {
+        return pinEntry(key) != null;
+    }
+
+    public void release(String key) {
+        synchronized (evictionLock) {
+            var entry = index.get(key);
+            if (entry != null && entry.pins > 0) {
+                entry.pins--;
+            }
+        }
+        evict();
+    }
+
+    public int entries() {
+        return index.size();
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    private Entry pinEntry(String key) {
+        synchronized (evictionLock) {
+            var entry = index.get(key);
+            if (entry != null) {
+                entry.pins++;
+            }
+            return entry;
+        }
+    }
+
+    private void evict() {
+        if (size.get() <= budget) return;
+
+        synchronized (evictionLock) {
+            // access times keep changing while we sort, so sort a snapshot of them
+            var candidates = new ArrayList<Candidate>(index.size());
+            index.forEach((key, entry) -> candidates.add(new Candidate(key, entry, entry.lastAccess)));
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+
+            for (var candidate : candidates) {
+                if (size.get() <= budget) break;
+                // still being sent to someone
+                if (candidate.entry.pins > 0 || index.get(candidate.key) != candidate.entry) continue;
+
+                try {
+                    Files.deleteIfExists(fileOf(candidate.key));
+                    remove(candidate.key, candidate.entry);
+                } catch (IOException e) {
+                    logger.warn("Failed to evict cache file {}", candidate.key, e);
+                }
+            }
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (index.remove(key, entry)) {
+            size.addAndGet(-entry.size);
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    private static class Entry {
+        private final long size;
+        private volatile long lastAccess;
+        // guarded by evictionLock
+        private int pins;
+
+        private Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static class Candidate {
+        private final String key;
+        private final Entry entry;
+        private final long lastAccess;
+
+        private Candidate(String key, Entry entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single conversion of a track, shared by everyone who requested it while it was queued or running.
+ * The result is the location of the finished file in the conversion cache.
+ */
+public class ConversionJob {
+    private final String key;
+    private final AudioTrack track;
+    private final ConversionOptions options;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    private final AtomicInteger requesters = new AtomicInteger(1);
+    // wall clock time the conversion started at, 0 while it's queued
+    private volatile long startedAt;
+    // how far into the track the conversion got, in milliseconds
+    private volatile long position;
+    private volatile long finishedAt;
+
+    public ConversionJob(String key, AudioTrack track, ConversionOptions options) {
+        this.key = key;
+        this.track = track;
+        this.options = options;
+        result.whenComplete((file, e) -> finishedAt = System.currentTimeMillis());
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public AudioTrack track() {
+        return track;
+    }
+
+    public ConversionOptions options() {
+        return options;
+    }
+
+    public CompletableFuture<Path> result() {
+        return result;
+    }
+
+    public int requesters() {
+        return requesters.get();
+    }
+
+    public boolean started() {
+        return startedAt != 0;
+    }
+
+    /**
+     * @return milliseconds the conversion has been running for, or took if it's done
+     */
+    public long elapsed() {
+        if (!started()) {
+            return 0;
+        }
+        return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    void attach() {
+        requesters.incrementAndGet();
+    }
+
+    void start() {
+        startedAt = System.currentTimeMillis();
+    }
+
+    void progress(long position) {
+        this.position = position;
+    }
+}
@@ -0,0 +1,106 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.util.Set;
+
+/**
+ * Codec settings of a conversion, and which part of the track it covers. Everything which changes the produced file
+ * has to be part of {@link #cacheKey()}, since that is what finished conversions are cached under.
+ */
+public class ConversionOptions {
+    /**
+     * Rates users can pick, a subset of what {@link PcmFrontEnd#supports} accepts with small filter tables.
+     */
+    static final Set<Integer> sampleRates = Set.of(8000, 16000, 16384, 24000, 32000, 32768, 44100, 48000);
+    private static final boolean segmentedByDefault = Boolean.parseBoolean(Env.getOrDefault("SEGMENTED_ENCODE", "false"));
+    // Computronics tape drives play back at 32768 Hz
+    private static final int defaultSampleRate = Integer.parseInt(Env.getOrDefault("SAMPLE_RATE", "32768"));
+    private static final boolean verifyByDefault = Boolean.parseBoolean(Env.getOrDefault("VERIFY_CONVERSIONS", "false"));
+
+    private final boolean newDfpwm;
+    private final boolean segmented;
+    private final int sampleRate;
+    // doesn't change the output, so it isn't part of describe()
+    private final boolean verify;
+    // converted part of the track in milliseconds, to is Long.MAX_VALUE up to the end
+    private final long from;
+    private final long to;
+
+    public ConversionOptions(boolean newDfpwm, boolean segmented, int sampleRate, boolean verify) {
+        this(newDfpwm, segmented, sampleRate, verify, 0, Long.MAX_VALUE);
+    }
+
+    public ConversionOptions(boolean newDfpwm, boolean segmented, int sampleRate, boolean verify, long from, long to) {
+        if (!PcmFrontEnd.supports(sampleRate)) {
+            throw new IllegalArgumentException("Sample rate of " + sampleRate + " Hz is not supported.");
+        }
+        this.newDfpwm = newDfpwm;
+        this.segmented = segmented;
+        this.sampleRate = sampleRate;
+        this.verify = verify;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static ConversionOptions defaults() {
+        return new ConversionOptions(true, segmentedByDefault, defaultSampleRate, verifyByDefault);
+    }
+
+    public boolean newDfpwm() {
+        return newDfpwm;
+    }
+
+    public boolean segmented() {
+        return segmented;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return whether the output is decoded again while converting to measure its quality
+     */
+    public boolean verify() {
+        return verify;
+    }
+
+    /**
+     * @return the same options, converting only the given part of the track
+     */
+    public ConversionOptions clip(long from, long to) {
+        return new ConversionOptions(newDfpwm, segmented, sampleRate, verify, from, to);
+    }
+
+    public long from() {
+        return from;
+    }
+
+    public long to() {
+        return to;
+    }
+
+    public boolean clipped() {
+        return from > 0 || to != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return how much of the track gets converted in milliseconds
+     */
+    public long length(AudioTrack track) {
+        return Math.max(Math.min(to, track.getDuration()) - from, 0);
+    }
+
+    /**
+     * @return the encoder configuration, which conversions are grouped by in the metrics
+     */
+    public String describe() {
+        return (newDfpwm ? "dfpwm1a" : "dfpwm") + (segmented ? "-segmented" : "") + "/"
+                + ConverterThread.SAMPLE_PATH + "@" + sampleRate;
+    }
+
+    public String cacheKey() {
+        return clipped() ? describe() + "/" + from + "-" + (to != Long.MAX_VALUE ? to : "") : describe();
+    }
+}
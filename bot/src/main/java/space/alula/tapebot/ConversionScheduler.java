@@ -0,0 +1,171 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs conversions on a fixed pool of worker threads. Pending work is kept in a bounded queue which is
+ * drained round-robin, first across guilds and then across users of the same guild, so a single busy
+ * guild or user cannot starve everyone else.
+ */
+public class ConversionScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ConversionScheduler.class);
+
+    private final int workers;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // guild id -> user id -> pending tasks, iteration order is the order in which they are going to be served
+    private final LinkedHashMap<Long, LinkedHashMap<Long, ArrayDeque<Runnable>>> queues = new LinkedHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private int queued;
+
+    public ConversionScheduler(int workers, int capacity) {
+        this.workers = workers;
+        this.capacity = capacity;
+
+        for (int i = 0; i < workers; i++) {
+            var thread = new Thread(this::work, "Converter worker #" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a task for execution.
+     *
+     * @return number of queued tasks which are going to be started before this one
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public int submit(long guildId, long userId, Runnable task) {
+        lock.lock();
+        try {
+            if (queued >= capacity) {
+                throw new RejectedExecutionException("The conversion queue is full, try again in a few minutes!");
+            }
+
+            queues.computeIfAbsent(guildId, id -> new LinkedHashMap<>())
+                    .computeIfAbsent(userId, id -> new ArrayDeque<>())
+                    .add(task);
+            queued++;
+            notEmpty.signal();
+            return positionOf(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int active() {
+        return active.get();
+    }
+
+    public int idle() {
+        return workers - active.get();
+    }
+
+    private void work() {
+        while (true) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("Conversion task failed!", e);
+            } finally {
+                active.decrementAndGet();
+                // tasks interrupt their worker to abort, don't let that leak into the next one
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queued == 0) {
+                notEmpty.await();
+            }
+
+            var guilds = queues.entrySet().iterator();
+            var guild = guilds.next();
+            guilds.remove();
+
+            var users = guild.getValue().entrySet().iterator();
+            var user = users.next();
+            users.remove();
+
+            var task = user.getValue().poll();
+            queued--;
+
+            // move both to the back of the line, so the next ones get their turn
+            if (!user.getValue().isEmpty()) {
+                guild.getValue().put(user.getKey(), user.getValue());
+            }
+            if (!guild.getValue().isEmpty()) {
+                queues.put(guild.getKey(), guild.getValue());
+            }
+
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // replays the round-robin order of take() over a copy of the queues, must be called with the lock held
+    private int positionOf(Runnable task) {
+        var guilds = new ArrayDeque<ArrayDeque<ArrayDeque<Runnable>>>();
+        for (var users : queues.values()) {
+            var copy = new ArrayDeque<ArrayDeque<Runnable>>();
+            for (var tasks : users.values()) {
+                copy.add(new ArrayDeque<>(tasks));
+            }
+            guilds.add(copy);
+        }
+
+        int position = 0;
+        while (!guilds.isEmpty()) {
+            var users = guilds.poll();
+            var tasks = users.poll();
+            if (tasks.poll() == task) {
+                return position;
+            }
+
+            position++;
+            if (!tasks.isEmpty()) {
+                users.add(tasks);
+            }
+            if (!users.isEmpty()) {
+                guilds.add(users);
+            }
+        }
+
+        return position;
+    }
+}
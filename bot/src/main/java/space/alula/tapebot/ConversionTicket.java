@@ -0,0 +1,99 @@
+package space.alula.tapebot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What happened to a conversion request, and where its result is going to show up.
+ * The resulting file is pinned in the cache, the ticket has to be {@link #release released} once it has been sent.
+ */
+public class ConversionTicket {
+    public enum Kind {
+        // served from the cache, the result is already available
+        CACHED,
+        // a new conversion has been queued
+        QUEUED,
+        // the same track is already being converted, the request joined that conversion
+        ATTACHED
+    }
+
+    private final Kind kind;
+    private final int position;
+    private final ConversionJob job;
+    private final CompletionStage<Path> result;
+    private final ConversionCache cache;
+    private final String key;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private ConversionTicket(Kind kind, int position, ConversionJob job, CompletionStage<Path> result,
+                             ConversionCache cache, String key) {
+        this.kind = kind;
+        this.position = position;
+        this.job = job;
+        this.result = result;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    /**
+     * @param file already pinned, see {@link ConversionCache#get}
+     */
+    static ConversionTicket cached(ConversionCache cache, String key, Path file) {
+        return new ConversionTicket(Kind.CACHED, 0, null, CompletableFuture.completedFuture(file), cache, key);
+    }
+
+    static ConversionTicket queued(ConversionCache cache, ConversionJob job, int position) {
+        return new ConversionTicket(Kind.QUEUED, position, job, pinned(cache, job), cache, job.key());
+    }
+
+    static ConversionTicket attached(ConversionCache cache, ConversionJob job) {
+        return new ConversionTicket(Kind.ATTACHED, 0, job, pinned(cache, job), cache, job.key());
+    }
+
+    // the job keeps the file pinned while its result is completed, so this only fails for a job finished long ago
+    private static CompletionStage<Path> pinned(ConversionCache cache, ConversionJob job) {
+        return job.result().thenApply(file -> {
+            if (!cache.pin(job.key())) {
+                throw new CompletionException(new IOException("The conversion got evicted from the cache, try again."));
+            }
+            return file;
+        });
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return number of queued conversions which are going to be started before this one, if it has been queued
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return the conversion this ticket is waiting for, null if it was served from the cache
+     */
+    public ConversionJob job() {
+        return job;
+    }
+
+    public CompletionStage<Path> result() {
+        return result;
+    }
+
+    /**
+     * Lets the cache evict the file again, to be called once the result has been sent or given up on.
+     */
+    public void release() {
+        result.thenAccept(file -> {
+            if (released.compareAndSet(false, true)) {
+                cache.release(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,261 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.Catnip;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class Conversions {
+    public static final ConversionScheduler scheduler;
+    public static final ConversionCache cache;
+    public static final AdmissionControl admission = new AdmissionControl(
+            new AdmissionControl.Limit(Long.parseLong(Env.getOrDefault("USER_CONVERSIONS_PER_HOUR", "30")),
+                    Long.parseLong(Env.getOrDefault("USER_BURST", "5"))),
+            new AdmissionControl.Limit(Long.parseLong(Env.getOrDefault("GUILD_CONVERSIONS_PER_HOUR", "120")),
+                    Long.parseLong(Env.getOrDefault("GUILD_BURST", "15"))),
+            Long.parseLong(Env.getOrDefault("CONVERSION_BUDGET_MB", "256")) * 1048576);
+    public static final JobJournal journal;
+    private static final Logger logger = LoggerFactory.getLogger(Conversions.class);
+    private static final Map<String, ConversionJob> inflight = new ConcurrentHashMap<>();
+    private static final long replayRetry = TimeUnit.SECONDS.toMillis(10);
+
+    static {
+        scheduler = new ConversionScheduler(
+                Integer.parseInt(Env.getOrDefault("CONVERTER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(Env.getOrDefault("CONVERTER_QUEUE_SIZE", "32")));
+        try {
+            cache = new ConversionCache(Path.of(Env.getOrDefault("CACHE_DIR", "cache")),
+                    Long.parseLong(Env.getOrDefault("CACHE_MAX_SIZE_MB", "1024")) * 1048576);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the conversion cache!", e);
+        }
+        try {
+            journal = new JobJournal(Path.of(Env.getOrDefault("JOURNAL_FILE", "journal.bin")),
+                    Integer.parseInt(Env.getOrDefault("JOURNAL_COMPACT_AFTER", "256")));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the job journal!", e);
+        }
+    }
+
+    private Conversions() {
+        //
+    }
+
+    /**
+     * Serves a conversion from the cache, joins a running conversion of the same track, or queues a new one.
+     * Only new conversions go through admission control.
+     * <p>
+     * Requests which don't get served from the cache are journaled until their conversion finishes, see {@link #replay}.
+     *
+     * @param channelId where the result is going to be sent, in case it has to be replayed
+     * @throws RejectedExecutionException if the conversion queue is full
+     * @throws AdmissionControl.Rejected  if the conversion wasn't admitted
+     */
+    public static ConversionTicket submit(long guildId, long channelId, long userId, AudioTrack track,
+                                          ConversionOptions options) {
+        return submitAll(guildId, channelId, userId, track, List.of(options)).get(0);
+    }
+
+    /**
+     * Same as {@link #submit(long, long, long, AudioTrack, ConversionOptions)} for several variants of the track.
+     * The ones which have to be converted are converted together, with a single decode, and admitted as one.
+     *
+     * @return one ticket per variant, in the same order
+     */
+    public static List<ConversionTicket> submitAll(long guildId, long channelId, long userId, AudioTrack track,
+                                                   List<ConversionOptions> variants) {
+        // serialized up front, the track is handed over to the converter below
+        byte[] encoded = null;
+        try {
+            encoded = MusicResolver.encode(track);
+        } catch (IOException e) {
+            logger.debug("Cannot serialize {}, it won't survive a restart", track.getInfo().title, e);
+        }
+
+        var tickets = submit(guildId, userId, track, variants, true);
+        // one entry for all the variants which are converted, so a replay decodes the track once as well
+        var pending = new ArrayList<ConversionOptions>();
+        var results = new ArrayList<CompletableFuture<?>>();
+        for (int i = 0; i < tickets.size(); i++) {
+            var ticket = tickets.get(i);
+            if (ticket.kind() == ConversionTicket.Kind.CACHED) continue;
+            pending.add(variants.get(i));
+            results.add(ticket.result().toCompletableFuture());
+        }
+        if (encoded == null || pending.isEmpty()) {
+            return tickets;
+        }
+
+        try {
+            var id = journal.accept(new JobJournal.Entry(guildId, channelId, userId, pending, encoded));
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, e) -> journal.finish(id));
+        } catch (IOException e) {
+            logger.warn("Failed to journal the conversion of {}", track.getInfo().title, e);
+        }
+        return tickets;
+    }
+
+    /**
+     * Queues the journaled requests which didn't finish before the last shutdown again, without admission control,
+     * and sends their results to where they were requested from. Whatever doesn't fit into the queue is queued in
+     * waves as it drains.
+     */
+    public static void replay(Catnip catnip) {
+        var entries = journal.unfinished();
+        if (!entries.isEmpty()) {
+            logger.info("Replaying {} conversions which didn't finish before the last shutdown", entries.size());
+        }
+        replay(catnip, entries);
+    }
+
+    private static void replay(Catnip catnip, List<JobJournal.Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            var entry = entries.get(i);
+            var channel = String.valueOf(entry.channelId());
+            var mention = "<@" + entry.userId() + ">";
+            AudioTrack track;
+            try {
+                track = MusicResolver.decode(entry.track());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to replay request {}", entry.id(), e);
+                journal.finish(entry.id());
+                catnip.rest().channel().sendMessage(channel, CommandContext.ERROR_ICON + "  |  " + mention
+                        + ", your conversion got lost in a restart, please request it again.");
+                continue;
+            }
+
+            List<ConversionTicket> tickets;
+            try {
+                tickets = submit(entry.guildId(), entry.userId(), track, entry.variants(), false);
+            } catch (RejectedExecutionException e) {
+                // the entry stays unfinished, so it's still there if the process goes down before the retry
+                var remaining = List.copyOf(entries.subList(i, entries.size()));
+                logger.info("Conversion queue is full, replaying the remaining {} requests in a bit", remaining.size());
+                catnip.vertx().setTimer(replayRetry, id -> replay(catnip, remaining));
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to replay request {}, it's replayed again on the next start", entry.id(), e);
+                continue;
+            }
+
+            var results = tickets.stream().map(t -> t.result().toCompletableFuture()).collect(Collectors.toList());
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).whenComplete((ignored, e) -> {
+                journal.finish(entry.id());
+                if (e != null) {
+                    catnip.rest().channel().sendMessage(channel, CommandContext.ERROR_ICON + "  |  " + mention + ", "
+                            + Commands.failureMessage(e));
+                    tickets.forEach(ConversionTicket::release);
+                    return;
+                }
+                var files = results.stream().map(result -> result.join().toFile()).collect(Collectors.toList());
+                var content = CommandContext.SUCCESS_ICON + "  |  " + mention
+                        + ", here you go, sorry for the wait, I had to restart:";
+                var sent = ConverterThread.messages(content, track, entry.variants(), files).stream()
+                        .map(message -> catnip.rest().channel().sendMessage(channel, message).toCompletableFuture())
+                        .toArray(CompletableFuture[]::new);
+                CompletableFuture.allOf(sent).whenComplete((delivered, ex) -> tickets.forEach(ConversionTicket::release));
+            });
+        }
+    }
+
+    private static List<ConversionTicket> submit(long guildId, long userId, AudioTrack track,
+                                                 List<ConversionOptions> variants, boolean admit) {
+        var tickets = new ConversionTicket[variants.size()];
+        var jobs = new ArrayList<ConversionJob>();
+        for (int i = 0; i < variants.size(); i++) {
+            var options = variants.get(i);
+            var key = ConversionCache.key(track, options);
+            var cached = cache.get(key);
+            if (cached != null) {
+                tickets[i] = ConversionTicket.cached(cache, key, cached);
+                continue;
+            }
+
+            var job = new ConversionJob(key, track, options);
+            var running = inflight.putIfAbsent(key, job);
+            if (running != null) {
+                running.attach();
+                Metrics.attached.increment();
+                tickets[i] = ConversionTicket.attached(cache, running);
+                continue;
+            }
+
+            // the job is removed only after its result went into the cache, so nobody can miss both
+            job.result().whenComplete((file, e) -> inflight.remove(key, job));
+            jobs.add(job);
+        }
+        if (jobs.isEmpty()) {
+            return Arrays.asList(tickets);
+        }
+
+        try {
+            if (admit) {
+                long size = 0;
+                for (var job : jobs) {
+                    size += estimatedSize(track, job.options());
+                }
+                var permit = admission.admit(guildId, userId, size);
+                CompletableFuture.allOf(jobs.stream().map(ConversionJob::result).toArray(CompletableFuture[]::new))
+                        .whenComplete((ignored, e) -> permit.release());
+            }
+
+            int position;
+            if (RemoteConversions.enabled()) {
+                // workers take single jobs, so every variant is decoded on its own there
+                position = RemoteConversions.submit(guildId, userId, jobs.get(0));
+                for (int i = 1; i < jobs.size(); i++) {
+                    RemoteConversions.submit(guildId, userId, jobs.get(i));
+                }
+            } else {
+                position = scheduler.submit(guildId, userId, new ConverterThread(jobs, cache));
+            }
+
+            for (int i = 0, job = 0; i < tickets.length; i++) {
+                if (tickets[i] == null) {
+                    tickets[i] = ConversionTicket.queued(cache, jobs.get(job++), position);
+                }
+            }
+            return Arrays.asList(tickets);
+        } catch (RejectedExecutionException e) {
+            // fails everyone who managed to attach in the meantime as well
+            for (var job : jobs) {
+                job.result().completeExceptionally(e);
+            }
+            for (var ticket : tickets) {
+                if (ticket != null) {
+                    ticket.release();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return expected size of the converted track, the upload limit if the track has no known length
+     */
+    public static long estimatedSize(AudioTrack track, ConversionOptions options) {
+        var length = options.length(track);
+        if (length == Long.MAX_VALUE || (track.getInfo().isStream && options.to() == Long.MAX_VALUE)) {
+            return ConverterThread.uploadLimit;
+        }
+        return Math.min(length * options.sampleRate() / 8000, ConverterThread.uploadLimit);
+    }
+
+    public static int inflight() {
+        return inflight.size();
+    }
+}
@@ -0,0 +1,299 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.entity.message.Message;
+import com.mewna.catnip.entity.message.MessageOptions;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+public class ConverterThread implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ConverterThread.class);
+    // decoding runs ahead of realtime, so these only trip when the source itself stalls
+    private static final long firstFrameTimeout = TimeUnit.SECONDS.toMillis(30);
+    private static final long frameTimeout = TimeUnit.SECONDS.toMillis(10);
+    static final long uploadLimit = 8 * 1000000;
+    // how PCM reaches the encoder, part of the cache key of every conversion
+    public static final String SAMPLE_PATH = "s16le-mix-polyphase24-round";
+    private final List<ConversionJob> jobs;
+    private final AudioTrack track;
+    private final ConversionCache cache;
+
+    public ConverterThread(ConversionJob job, ConversionCache cache) {
+        this(List.of(job), cache);
+    }
+
+    /**
+     * Converts several variants of the same track with a single decode, all jobs have to share their track.
+     */
+    public ConverterThread(List<ConversionJob> jobs, ConversionCache cache) {
+        this.jobs = jobs;
+        this.track = jobs.get(0).track();
+        this.cache = cache;
+    }
+
+    public static CompletionStage<Message> deliver(CommandContext context, AudioTrack track, File file) {
+        var start = System.nanoTime();
+        return context.send(new MessageOptions()
+                .content(CommandContext.SUCCESS_ICON + "  |  " + context.sender().asMention() + ", here you go:")
+                .addFile(StringUtil.fileName(track.getInfo().title, ".dfpwm"), file))
+                .whenComplete((message, e) -> Metrics.upload.since(start));
+    }
+
+    /**
+     * Sends several variants of a track in as few messages as the upload limit allows, named after their codec and
+     * sample rate.
+     *
+     * @return completed once every message has been sent
+     */
+    public static CompletionStage<Void> deliver(CommandContext context, AudioTrack track,
+                                                List<ConversionOptions> variants, List<File> files) {
+        if (files.size() == 1) {
+            return deliver(context, track, files.get(0)).handle((message, e) -> null);
+        }
+
+        var content = CommandContext.SUCCESS_ICON + "  |  " + context.sender().asMention() + ", here you go:";
+        var sent = new ArrayList<CompletableFuture<?>>();
+        for (var message : messages(content, track, variants, files)) {
+            sent.add(send(context, message));
+        }
+        return CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).handle((ignored, e) -> null);
+    }
+
+    /**
+     * Groups the files into as few messages as the upload limit allows, a single file keeps the plain track name.
+     */
+    static List<MessageOptions> messages(String content, AudioTrack track, List<ConversionOptions> variants,
+                                         List<File> files) {
+        if (files.size() == 1) {
+            return List.of(new MessageOptions()
+                    .content(content)
+                    .addFile(StringUtil.fileName(track.getInfo().title, ".dfpwm"), files.get(0)));
+        }
+
+        var messages = new ArrayList<MessageOptions>();
+        MessageOptions message = null;
+        long size = 0;
+        for (int i = 0; i < files.size(); i++) {
+            var file = files.get(i);
+            if (message == null || size + file.length() > uploadLimit) {
+                message = new MessageOptions().content(content);
+                messages.add(message);
+                size = 0;
+            }
+
+            var variant = variants.get(i);
+            var suffix = (variant.newDfpwm() ? "dfpwm1a" : "dfpwm") + "-" + variant.sampleRate();
+            message.addFile(StringUtil.fileName(track.getInfo().title + " " + suffix, ".dfpwm"), file);
+            size += file.length();
+        }
+        return messages;
+    }
+
+    private static CompletableFuture<?> send(CommandContext context, MessageOptions message) {
+        var start = System.nanoTime();
+        return context.send(message)
+                .whenComplete((sent, e) -> Metrics.upload.since(start))
+                .toCompletableFuture();
+    }
+
+    @Override
+    public void run() {
+        var keys = jobs.stream().map(ConversionJob::key).collect(Collectors.joining(", "));
+        logger.info("Starting conversion of {} [{}]...", track.getInfo().title, keys);
+        jobs.forEach(ConversionJob::start);
+
+        var spools = new ArrayList<SpoolFile>(jobs.size());
+        try {
+            var outs = new ArrayList<OutputStream>(jobs.size());
+            for (int i = 0; i < jobs.size(); i++) {
+                spools.add(new SpoolFile(uploadLimit));
+                outs.add(spools.get(i).outputStream());
+            }
+
+            var options = jobs.stream().map(ConversionJob::options).collect(Collectors.toList());
+            convert(MusicResolver.playerManager, track, options, outs, position -> {
+                for (var job : jobs) {
+                    job.progress(position);
+                }
+            });
+
+            for (int i = 0; i < jobs.size(); i++) {
+                var job = jobs.get(i);
+                logger.info("Conversion completed, size: {}, requested by {} users", spools.get(i).size(), job.requesters());
+                // the cache takes over the file, closing the spool afterwards is a no-op
+                var file = cache.put(job.key(), spools.get(i));
+                // the tickets pin the file while it's completed, the job's own pin isn't needed afterwards
+                job.result().complete(file);
+                cache.release(job.key());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failAll(new IllegalStateException("Conversion was interrupted."));
+        } catch (TimeoutException | FriendlyException e) {
+            failAll(e);
+        } catch (Exception e) {
+            logger.error("Conversion failed!", e);
+            failAll(e);
+        } finally {
+            spools.forEach(SpoolFile::close);
+            // never leave anyone waiting, whatever happened above
+            failAll(new IllegalStateException("Conversion was aborted."));
+        }
+    }
+
+    private void failAll(Throwable e) {
+        for (var job : jobs) {
+            job.result().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Decodes the track, or the part of it selected by the options, and writes it to the stream as DFPWM,
+     * closing the stream once done.
+     *
+     * @throws FriendlyException if the track failed to play
+     * @throws TimeoutException  if the source stalled
+     */
+    public static void convert(AudioTrack track, ConversionOptions options, OutputStream out) throws Exception {
+        convert(track, options, out, position -> {
+        });
+    }
+
+    /**
+     * Same as {@link #convert(AudioTrack, ConversionOptions, OutputStream)}, reporting how far into the converted
+     * part of the track every frame is in milliseconds to progress.
+     */
+    public static void convert(AudioTrack track, ConversionOptions options, OutputStream out, LongConsumer progress)
+            throws Exception {
+        convert(MusicResolver.playerManager, track, options, out, progress);
+    }
+
+    /**
+     * Same as {@link #convert(AudioTrack, ConversionOptions, OutputStream, LongConsumer)}, playing the track
+     * with a player of the given manager, which has to output {@code DISCORD_PCM_S16_LE}.
+     */
+    public static void convert(AudioPlayerManager manager, AudioTrack track, ConversionOptions options, OutputStream out,
+                               LongConsumer progress) throws Exception {
+        convert(manager, track, List.of(options), List.of(out), progress);
+    }
+
+    /**
+     * Decodes the track once and encodes it into every variant, writing each one to the output at the same index.
+     * The variants may differ in anything but the part of the track they cover.
+     *
+     * @see FanOutEncoder
+     */
+    public static void convert(AudioPlayerManager manager, AudioTrack track, List<ConversionOptions> variants,
+                               List<OutputStream> outs, LongConsumer progress) throws Exception {
+        var clip = variants.get(0);
+        for (var variant : variants) {
+            if (variant.from() != clip.from() || variant.to() != clip.to()) {
+                throw new IllegalArgumentException("All variants have to cover the same part of the track.");
+            }
+        }
+        if (clip.from() > 0) {
+            if (!track.isSeekable()) {
+                throw new IllegalArgumentException("This track can't be seeked, so it can't be clipped.");
+            }
+            // applied as soon as the track starts playing, nothing before it is decoded
+            track.setPosition(clip.from());
+        }
+
+        var player = manager.createPlayer();
+        var failure = new AtomicReference<FriendlyException>();
+        player.addListener(new AudioEventAdapter() {
+            @Override
+            public void onTrackException(AudioPlayer player, AudioTrack track, FriendlyException exception) {
+                failure.set(exception);
+            }
+        });
+
+        var encoder = new FanOutEncoder(variants, outs);
+        try {
+            try (encoder) {
+                pump(player, track, clip, encoder, progress);
+            } finally {
+                player.destroy();
+            }
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } catch (Exception e) {
+            Metrics.failed(e);
+            throw e;
+        }
+
+        for (int i = 0; i < variants.size(); i++) {
+            Metrics.conversions.increment();
+            var meter = encoder.meter(i);
+            if (meter != null) {
+                logger.info("Round trip SNR of {} [{}]: {} dB", track.getInfo().title, variants.get(i).describe(),
+                        String.format("%.2f", meter.snr()));
+                Metrics.verified(variants.get(i), meter.snr());
+            }
+        }
+    }
+
+    private static void pump(AudioPlayer player, AudioTrack track, ConversionOptions clip, FanOutEncoder encoder,
+                             LongConsumer progress) throws Exception {
+        var frameSize = StandardAudioDataFormats.DISCORD_PCM_S16_LE.maximumChunkSize();
+        var frame = new MutableAudioFrame();
+        var buffer = ByteBuffer.allocate(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+        frame.setBuffer(buffer);
+
+        // the frame is always written into the same buffer, so one view over it is enough
+        var pcm = buffer.asShortBuffer();
+
+        // provide() with a timeout blocks until the decoder hands over the next frame, and returns false
+        // once the track has ended, so frames are pulled exactly as fast as they can be decoded
+        long start = System.nanoTime();
+        long decodeTime = 0;
+        long encodeTime = 0;
+        player.playTrack(track);
+        try {
+            var first = true;
+            while (player.provide(frame, first ? firstFrameTimeout : frameTimeout, TimeUnit.MILLISECONDS)) {
+                if (frame.getTimecode() >= clip.to()) {
+                    break;
+                }
+
+                long decoded = System.nanoTime();
+                if (first) {
+                    Metrics.firstFrame.since(start);
+                    first = false;
+                } else {
+                    decodeTime += decoded - start;
+                }
+
+                encoder.write(pcm, frame.getDataLength() / 4);
+                progress.accept(frame.getTimecode() - clip.from());
+                start = System.nanoTime();
+                encodeTime += start - decoded;
+            }
+        } finally {
+            Metrics.decode.record(decodeTime);
+            Metrics.encode.record(encodeTime);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package space.alula.tapebot;
+
+/*
+DFPWM1a encoder, constant-folded version of DFPWM.compress with newdfpwm = true
+(respPrec = 10, response only ever steps by one and is clamped to 8..1023).
+*/
+
+public final class DFPWM1aEncoder implements DFPWMEncoder {
+    private int response = 0;
+    private int level = 0;
+    private int lastbit = 0;
+
+    @Override
+    public void compress(byte[] dest, byte[] src, int destoffs, int srcoffs, int len) {
+        int response = this.response;
+        int level = this.level;
+        int lastbit = this.lastbit;
+
+        for (int i = 0; i < len; i++) {
+            int d = 0;
+            for (int j = 0; j < 8; j++) {
+                int inlevel = src[srcoffs++];
+                // inlevel > level, or both sitting at 127 (the only values summing up to 254)
+                int bit = ((level - inlevel) >>> 31) | ((253 - inlevel - level) >>> 31);
+                d = (d >> 1) | (bit << 7);
+
+                // distance to the target, (bit ? 127 : -128) - level, kept branch-free
+                int diff = bit * 255 - 128 - level;
+                int delta = (response * diff + 512) >> 10;
+                if (delta == 0 && diff != 0)
+                    delta = (bit << 1) - 1;
+                level += delta;
+
+                response = Math.max(Math.min(response + 1 - ((bit ^ lastbit) << 1), 1023), 8);
+                lastbit = bit;
+            }
+            dest[destoffs++] = (byte) d;
+        }
+
+        this.response = response;
+        this.level = level;
+        this.lastbit = lastbit;
+    }
+}
@@ -0,0 +1,16 @@
+package space.alula.tapebot;
+
+/*
+Encoder half of the DFPWM codec, specialized per variant.
+Implementations produce output bit-identical to DFPWM.compress, with the codec
+parameters folded into constants so the hot loop stays branch-light.
+NOTE, len is in bytes relative to DFPWM (len*8 PCM bytes)
+*/
+
+public interface DFPWMEncoder {
+    void compress(byte[] dest, byte[] src, int destoffs, int srcoffs, int len);
+
+    static DFPWMEncoder create(boolean newdfpwm) {
+        return newdfpwm ? new DFPWM1aEncoder() : new DFPWMLegacyEncoder();
+    }
+}
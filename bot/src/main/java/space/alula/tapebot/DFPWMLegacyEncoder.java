@@ -0,0 +1,50 @@
+package space.alula.tapebot;
+
+/*
+Legacy DFPWM encoder, constant-folded version of DFPWM.compress with newdfpwm = false
+(respPrec = 8, respInc = 7, respDec = 20).
+*/
+
+public final class DFPWMLegacyEncoder implements DFPWMEncoder {
+    private int response = 0;
+    private int level = 0;
+    private int lastbit = 0;
+
+    @Override
+    public void compress(byte[] dest, byte[] src, int destoffs, int srcoffs, int len) {
+        int response = this.response;
+        int level = this.level;
+        int lastbit = this.lastbit;
+
+        for (int i = 0; i < len; i++) {
+            int d = 0;
+            for (int j = 0; j < 8; j++) {
+                int inlevel = src[srcoffs++];
+                // inlevel > level, or both sitting at 127 (the only values summing up to 254)
+                int bit = ((level - inlevel) >>> 31) | ((253 - inlevel - level) >>> 31);
+                d = (d >> 1) | (bit << 7);
+
+                // distance to the target, (bit ? 127 : -128) - level, kept branch-free
+                int diff = bit * 255 - 128 - level;
+                int delta = (response * diff + 128) >> 8;
+                if (delta == 0 && diff != 0)
+                    delta = (bit << 1) - 1;
+                level += delta;
+
+                int same = (bit ^ lastbit) ^ 1;
+                int rtarget = same * 255;
+                int rdelta = same != 0 ? 7 : 20;
+                int nresponse = response + ((rdelta * (rtarget - response) + 128) >> 8);
+                if (nresponse == response && response != rtarget)
+                    nresponse += (same << 1) - 1;
+                response = nresponse;
+                lastbit = bit;
+            }
+            dest[destoffs++] = (byte) d;
+        }
+
+        this.response = response;
+        this.level = level;
+        this.lastbit = lastbit;
+    }
+}
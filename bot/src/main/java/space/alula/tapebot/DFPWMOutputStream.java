@@ -0,0 +1,93 @@
+package space.alula.tapebot;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes signed 8-bit PCM written to it and passes the resulting DFPWM data to the underlying stream.
+ * Samples which don't fill a whole DFPWM byte are buffered, and padded with silence on {@link #finish()}.
+ */
+public class DFPWMOutputStream extends FilterOutputStream {
+    private final DFPWMEncoder encoder;
+    private final byte[] pcm;
+    private final byte[] dfpwm;
+    private int buffered;
+    private boolean finished;
+
+    public DFPWMOutputStream(OutputStream out, DFPWMEncoder encoder) {
+        this(out, encoder, 8192);
+    }
+
+    public DFPWMOutputStream(OutputStream out, DFPWMEncoder encoder, int bufferSize) {
+        super(out);
+        this.encoder = encoder;
+        this.pcm = new byte[bufferSize & ~7];
+        this.dfpwm = new byte[pcm.length / 8];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        pcm[buffered++] = (byte) b;
+        if (buffered == pcm.length) {
+            encodeBuffered();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // top up what's left from the previous write first
+        if (buffered > 0) {
+            int n = Math.min(len, pcm.length - buffered);
+            System.arraycopy(b, off, pcm, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+            if (buffered == pcm.length) {
+                encodeBuffered();
+            }
+        }
+
+        // then encode whole bytes straight from the caller's array
+        while (buffered == 0 && len >= 8) {
+            int n = Math.min(len / 8, dfpwm.length);
+            encoder.compress(dfpwm, b, 0, off, n);
+            out.write(dfpwm, 0, n);
+            off += n * 8;
+            len -= n * 8;
+        }
+
+        System.arraycopy(b, off, pcm, buffered, len);
+        buffered += len;
+    }
+
+    /**
+     * Encodes the buffered samples, padding the last DFPWM byte with silence. Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+
+        while ((buffered & 7) != 0) {
+            pcm[buffered++] = 0;
+        }
+        encodeBuffered();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void encodeBuffered() throws IOException {
+        int n = buffered / 8;
+        encoder.compress(dfpwm, pcm, 0, 0, n);
+        out.write(dfpwm, 0, n);
+        buffered = 0;
+    }
+}
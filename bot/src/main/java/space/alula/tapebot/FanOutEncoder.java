@@ -0,0 +1,205 @@
+package space.alula.tapebot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encodes decoded PCM into one or more variants at once, each with its own front-end, encoder and output, so a track
+ * is decoded only once however many variants of it are wanted.
+ * <p>
+ * A single variant is encoded right on the calling thread. With more, the PCM is collected into blocks which every
+ * variant encodes in order on a fork-join pool, in parallel with the other variants and with decoding. Only a few
+ * blocks are in flight at a time, so a slow variant holds the decoder back instead of piling up PCM.
+ */
+public class FanOutEncoder implements Closeable {
+    // stereo samples per block, 320 ms of 48 kHz audio
+    private static final int blockSamples = 16 * 960;
+    private static final int maxInFlight = 4;
+
+    private final Variant[] variants;
+    private final ExecutorService pool;
+    private final ArrayDeque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+    private short[] block;
+    private int buffered;
+    private boolean closed;
+
+    public FanOutEncoder(List<ConversionOptions> options, List<OutputStream> outs) {
+        this(options, outs, ForkJoinPool.commonPool());
+    }
+
+    public FanOutEncoder(List<ConversionOptions> options, List<OutputStream> outs, ExecutorService pool) {
+        if (options.isEmpty() || options.size() != outs.size()) {
+            throw new IllegalArgumentException("Every variant needs exactly one output.");
+        }
+
+        this.variants = new Variant[options.size()];
+        for (int i = 0; i < variants.length; i++) {
+            variants[i] = new Variant(options.get(i), outs.get(i));
+        }
+        this.pool = pool;
+        this.block = variants.length > 1 ? new short[blockSamples * 2] : null;
+    }
+
+    /**
+     * Encodes a frame of interleaved stereo samples into every variant.
+     */
+    public void write(ShortBuffer frame, int samples) throws IOException {
+        if (variants.length == 1) {
+            variants[0].process(frame, samples);
+            return;
+        }
+
+        var source = frame.duplicate();
+        int offset = 0;
+        while (offset < samples) {
+            int n = Math.min(samples - offset, blockSamples - buffered);
+            source.position(offset * 2);
+            source.get(block, buffered * 2, n * 2);
+            buffered += n;
+            offset += n;
+            if (buffered == blockSamples) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * @return the meter of the given variant, null if it isn't verified
+     */
+    public RoundTripMeter meter(int variant) {
+        return variants[variant].meter;
+    }
+
+    /**
+     * Encodes what's left, waits for every variant to catch up and closes their outputs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        IOException failure = null;
+        try {
+            if (buffered > 0) {
+                submit();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        for (var variant : variants) {
+            try {
+                await(variant.tail);
+            } catch (IOException e) {
+                failure = suppress(failure, e);
+            }
+            try {
+                variant.dfpwm.close();
+            } catch (IOException e) {
+                failure = suppress(failure, e);
+            }
+            Metrics.encoded(variant.options, variant.encoded, variant.nanos);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void submit() throws IOException {
+        var pcm = ShortBuffer.wrap(block);
+        int samples = buffered;
+        block = new short[blockSamples * 2];
+        buffered = 0;
+
+        // each variant chains onto its own previous block, so blocks are encoded in order within a variant
+        var tails = new CompletableFuture<?>[variants.length];
+        for (int i = 0; i < variants.length; i++) {
+            var variant = variants[i];
+            variant.tail = variant.tail.thenRunAsync(() -> {
+                try {
+                    variant.process(pcm, samples);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pool);
+            tails[i] = variant.tail;
+        }
+
+        inFlight.add(CompletableFuture.allOf(tails));
+        while (inFlight.size() > maxInFlight) {
+            await(inFlight.poll());
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static IOException suppress(IOException failure, IOException e) {
+        if (failure == null) {
+            return e;
+        }
+        if (failure != e) {
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    private static class Variant {
+        private final ConversionOptions options;
+        private final PcmFrontEnd frontEnd;
+        private final RoundTripMeter meter;
+        private final OutputStream dfpwm;
+        private byte[] eightBit = new byte[0];
+        private long encoded;
+        private long nanos;
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        private Variant(ConversionOptions options, OutputStream out) {
+            this.options = options;
+            this.frontEnd = new PcmFrontEnd(options.sampleRate());
+            this.meter = options.verify() ? new RoundTripMeter(options.newDfpwm()) : null;
+            var sink = meter != null ? meter.wrap(out) : out;
+            this.dfpwm = options.segmented()
+                    ? new SegmentedDFPWMOutputStream(sink, options.newDfpwm())
+                    : new DFPWMOutputStream(sink, DFPWMEncoder.create(options.newDfpwm()));
+        }
+
+        private void process(ShortBuffer pcm, int samples) throws IOException {
+            long start = System.nanoTime();
+            if (eightBit.length < frontEnd.maxOutput(samples)) {
+                eightBit = new byte[frontEnd.maxOutput(samples)];
+            }
+
+            int written = frontEnd.process(pcm, samples, eightBit);
+            if (meter != null) {
+                meter.input(eightBit, 0, written);
+            }
+            // the output enforces its own size limit
+            dfpwm.write(eightBit, 0, written);
+            encoded += written;
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package space.alula.tapebot;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Set of hosts which may be connected to. Entries are either exact host names or, starting with a dot, a domain
+ * whose subdomains are all allowed, e.g. {@code .discordapp.net}. Checking a host takes one lookup per label.
+ */
+public class HostAllowlist {
+    private final Set<String> exact = new HashSet<>();
+    private final Set<String> suffixes = new HashSet<>();
+
+    private HostAllowlist() {
+    }
+
+    /**
+     * @param spec comma separated entries, as in {@code TRUSTED_HOSTS}
+     */
+    public static HostAllowlist parse(String spec) {
+        var allowlist = new HostAllowlist();
+        for (var entry : spec.split(",")) {
+            entry = normalize(entry.trim());
+            if (entry.startsWith(".") && entry.length() > 1) {
+                allowlist.suffixes.add(entry.substring(1));
+            } else if (!entry.isEmpty()) {
+                allowlist.exact.add(entry);
+            }
+        }
+        return allowlist;
+    }
+
+    public boolean allows(String host) {
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+
+        host = normalize(host);
+        if (exact.contains(host)) {
+            return true;
+        }
+        for (int dot = host.indexOf('.'); dot >= 0; dot = host.indexOf('.', dot + 1)) {
+            if (suffixes.contains(host.substring(dot + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String host) {
+        host = host.toLowerCase(Locale.ROOT);
+        // a fully qualified name is the same host
+        return host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+}
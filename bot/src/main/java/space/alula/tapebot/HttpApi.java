@@ -0,0 +1,273 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP interface for conversions,
+ * {@code GET /convert?q=<query or URL>[&codec=dfpwm][&rate=48000][&from=1:30][&to=3:00]}.
+ * <p>
+ * The DFPWM is sent with chunked transfer encoding while the track is being converted, so the first bytes go out as
+ * soon as the decoder produced its first frames, and there is no upload limit. The converter waits whenever the
+ * client doesn't keep up, a stalled client holds a converter thread but never any memory.
+ * Finished conversions of the same track are served straight from the cache.
+ */
+public class HttpApi {
+    private static final Logger logger = LoggerFactory.getLogger(HttpApi.class);
+    // guild and user the scheduler files API conversions under, they all share one turn in the round-robin
+    private static final long apiId = 0;
+
+    private HttpApi() {
+        //
+    }
+
+    /**
+     * Serves the API on the given host and port, it has no authentication and isn't meant to be exposed publicly.
+     */
+    public static void serve(Vertx vertx, String host, int port) {
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    if (!"/convert".equals(request.path())) {
+                        request.response().setStatusCode(404).end();
+                        return;
+                    }
+                    convert(vertx.getOrCreateContext(), request);
+                })
+                .listen(port, host, result -> {
+                    if (result.failed()) {
+                        logger.error("Failed to start the HTTP API on {}:{}!", host, port, result.cause());
+                    } else {
+                        logger.info("Serving the HTTP API on http://{}:{}/convert", host, port);
+                    }
+                });
+    }
+
+    private static void convert(Context context, HttpServerRequest request) {
+        var response = request.response();
+        var query = request.getParam("q");
+        if (query == null || query.isBlank()) {
+            error(response, 400, "Missing the q parameter.");
+            return;
+        }
+
+        var defaults = ConversionOptions.defaults();
+        var codec = request.getParam("codec");
+        var rate = request.getParam("rate");
+        var from = request.getParam("from");
+        var to = request.getParam("to");
+        ConversionOptions options;
+        try {
+            var sampleRate = rate != null ? Integer.parseInt(rate) : defaults.sampleRate();
+            if (!ConversionOptions.sampleRates.contains(sampleRate)) {
+                throw new IllegalArgumentException("Unsupported sample rate, use one of " + ConversionOptions.sampleRates + ".");
+            }
+            if (codec != null && !codec.equals("dfpwm") && !codec.equals("dfpwm1a")) {
+                throw new IllegalArgumentException("Unknown codec, use dfpwm or dfpwm1a.");
+            }
+            options = new ConversionOptions(codec != null ? codec.equals("dfpwm1a") : defaults.newDfpwm(),
+                    defaults.segmented(), sampleRate, defaults.verify(),
+                    from != null ? StringUtil.parseTime(from) : 0, to != null ? StringUtil.parseTime(to) : Long.MAX_VALUE);
+            if (options.from() >= options.to()) {
+                throw new IllegalArgumentException("The clip has to end after it starts.");
+            }
+        } catch (IllegalArgumentException e) {
+            error(response, 400, e instanceof NumberFormatException ? "Invalid sample rate." : e.getMessage());
+            return;
+        }
+
+        MusicResolver.resolve(query).whenComplete((track, e) -> context.runOnContext(v -> {
+            if (e != null) {
+                var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                error(response, cause instanceof IllegalArgumentException ? 404 : 502, cause.getMessage());
+                return;
+            }
+            if (track.getInfo().isStream || options.length(track) > TimeUnit.MINUTES.toMillis(Commands.maxTrackDuration)) {
+                error(response, 422, "Cannot convert streams or more than " + Commands.maxTrackDuration + " minutes at once.");
+                return;
+            }
+            if (options.from() >= track.getDuration() || options.from() > 0 && !track.isSeekable()) {
+                error(response, 422, "The clip is outside of the track, or the track can't be seeked.");
+                return;
+            }
+
+            response.putHeader("Content-Type", "application/octet-stream")
+                    .putHeader("Content-Disposition", "attachment; filename*=UTF-8''"
+                            + URLEncoder.encode(StringUtil.fileName(track.getInfo().title, ".dfpwm"), StandardCharsets.UTF_8)
+                            .replace("+", "%20"))
+                    .putHeader("X-Sample-Rate", String.valueOf(options.sampleRate()))
+                    .putHeader("X-Codec", options.newDfpwm() ? "dfpwm1a" : "dfpwm");
+
+            var key = ConversionCache.key(track, options);
+            var cached = Conversions.cache.get(key);
+            if (cached != null) {
+                response.sendFile(cached.toString(), result -> Conversions.cache.release(key));
+                return;
+            }
+
+            try {
+                var stream = new ResponseStream(context, response);
+                Conversions.scheduler.submit(apiId, apiId, () -> stream(track, options, stream));
+            } catch (RejectedExecutionException ex) {
+                error(response, 503, ex.getMessage());
+            }
+        }));
+    }
+
+    private static void stream(AudioTrack track, ConversionOptions options, ResponseStream stream) {
+        logger.info("Streaming conversion of {} [{}]...", track.getInfo().title, options.describe());
+        try {
+            ConverterThread.convert(track, options, stream);
+            stream.finish();
+        } catch (Exception e) {
+            if (stream.disconnected) {
+                logger.debug("Client went away while streaming {}", track.getInfo().title);
+            } else {
+                logger.warn("Streaming conversion of {} failed!", track.getInfo().title, e);
+            }
+            // ends the response without the last chunk, so the client can tell the file is incomplete
+            stream.abort();
+        }
+    }
+
+    private static void error(HttpServerResponse response, int status, String message) {
+        response.setStatusCode(status).putHeader("Content-Type", "text/plain; charset=utf-8").end(message + "\n");
+    }
+
+    /**
+     * Writes into direct buffers which are handed to the socket as they fill up. Only the converter thread writes,
+     * the response itself is only touched on its event loop context.
+     * <p>
+     * At most one chunk is on its way to the event loop at a time, and none while the response's write queue is full,
+     * which is what makes the converter wait for slow clients.
+     */
+    private static class ResponseStream extends OutputStream {
+        private static final int chunkSize = 16384;
+        // the first chunks are small so the client gets data right away, then they grow to the full size
+        private static final int firstChunkSize = 512;
+
+        private final Context context;
+        private final HttpServerResponse response;
+        private final byte[] single = new byte[1];
+        private ByteBuffer chunk = ByteBuffer.allocateDirect(firstChunkSize);
+        // guarded by this, set while a chunk is in flight or the write queue is full
+        private boolean paused;
+        private volatile boolean disconnected;
+
+        private ResponseStream(Context context, HttpServerResponse response) {
+            this.context = context;
+            this.response = response;
+            response.setChunked(true);
+            response.closeHandler(v -> {
+                disconnected = true;
+                resume();
+            });
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chunk.remaining());
+                chunk.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!chunk.hasRemaining()) {
+                    send();
+                }
+            }
+        }
+
+        /**
+         * Only flushes, the encoder closes its output even when the conversion failed. The response is ended by
+         * {@link #finish()} or {@link #abort()} once it's clear which one it is.
+         */
+        @Override
+        public void close() throws IOException {
+            if (chunk.position() > 0) {
+                send();
+            }
+            awaitResume();
+        }
+
+        // sends the last chunk, which tells the client the file is complete
+        private void finish() throws IOException {
+            close();
+            context.runOnContext(v -> {
+                if (!response.closed()) {
+                    response.end();
+                }
+            });
+        }
+
+        private void abort() {
+            context.runOnContext(v -> {
+                if (!response.closed()) {
+                    response.close();
+                }
+            });
+        }
+
+        private void send() throws IOException {
+            awaitResume();
+            synchronized (this) {
+                paused = true;
+            }
+
+            // the direct buffer is owned by the wrapping ByteBuf from here on, and freed by the GC once it was written
+            var data = Buffer.buffer(Unpooled.wrappedBuffer(chunk.flip()));
+            context.runOnContext(v -> {
+                if (response.closed()) {
+                    return;
+                }
+                response.write(data);
+                if (response.writeQueueFull()) {
+                    response.drainHandler(drained -> resume());
+                } else {
+                    resume();
+                }
+            });
+            chunk = ByteBuffer.allocateDirect(Math.min(chunk.capacity() * 2, chunkSize));
+        }
+
+        private synchronized void awaitResume() throws IOException {
+            try {
+                while (paused && !disconnected) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (disconnected) {
+                throw new IOException("Client disconnected.");
+            }
+        }
+
+        private synchronized void resume() {
+            paused = false;
+            notifyAll();
+        }
+    }
+}
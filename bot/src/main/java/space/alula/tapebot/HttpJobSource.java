@@ -0,0 +1,62 @@
+package space.alula.tapebot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker end of the HTTP transport, see {@link HttpJobTransport}.
+ */
+public class HttpJobSource implements JobSource {
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String gateway;
+    private final String authorization;
+
+    public HttpJobSource(String gateway, String secret) {
+        this.gateway = gateway.endsWith("/") ? gateway.substring(0, gateway.length() - 1) : gateway;
+        this.authorization = "Bearer " + secret;
+    }
+
+    @Override
+    public byte[] next(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        var wait = unit.toMillis(timeout);
+        var request = HttpRequest.newBuilder(URI.create(gateway + "/jobs/next?wait=" + wait))
+                .header("Authorization", authorization)
+                .timeout(Duration.ofMillis(wait).plusSeconds(10))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        switch (response.statusCode()) {
+            case 200:
+                return response.body();
+            case 204:
+                return null;
+            default:
+                throw new IOException("Gateway responded with status " + response.statusCode() + ".");
+        }
+    }
+
+    @Override
+    public void reply(byte[] result) throws IOException {
+        var request = HttpRequest.newBuilder(URI.create(gateway + "/jobs/result"))
+                .header("Authorization", authorization)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(result))
+                .build();
+        try {
+            var response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 204) {
+                throw new IOException("Gateway responded with status " + response.statusCode() + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending the result.", e);
+        }
+    }
+}
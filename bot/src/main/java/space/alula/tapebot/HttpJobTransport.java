@@ -0,0 +1,214 @@
+package space.alula.tapebot;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Gateway end of the HTTP transport. Workers long-poll {@code POST /jobs/next?wait=<ms>} for jobs and send results to
+ * {@code POST /jobs/result}, both authenticated with {@code Authorization: Bearer <WORKER_SECRET>}.
+ */
+public class HttpJobTransport implements JobTransport {
+    private static final Logger logger = LoggerFactory.getLogger(HttpJobTransport.class);
+    private static final long maxWait = TimeUnit.SECONDS.toMillis(25);
+    // a whole converted file, plus some room for the id and the error message
+    private static final long maxResult = ConverterThread.uploadLimit + 65536;
+
+    private final Vertx vertx;
+    private final byte[] authorization;
+    private final int capacity;
+    // both guarded by this, there are never jobs and waiting workers at the same time
+    private final ArrayDeque<byte[]> jobs = new ArrayDeque<>();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private volatile Consumer<byte[]> handler = result -> {
+    };
+
+    public HttpJobTransport(Vertx vertx, String host, int port, String secret, int capacity) {
+        this.vertx = vertx;
+        this.authorization = ("Bearer " + secret).getBytes(StandardCharsets.UTF_8);
+        this.capacity = capacity;
+
+        vertx.createHttpServer()
+                .requestHandler(this::handle)
+                .listen(port, host, result -> {
+                    if (result.failed()) {
+                        logger.error("Failed to start the worker endpoint on {}:{}!", host, port, result.cause());
+                    } else {
+                        logger.info("Waiting for workers on http://{}:{}/jobs", host, port);
+                    }
+                });
+    }
+
+    @Override
+    public void dispatch(byte[] job) {
+        Waiter waiter;
+        synchronized (this) {
+            waiter = waiters.poll();
+            if (waiter == null) {
+                if (jobs.size() >= capacity) {
+                    throw new RejectedExecutionException("The conversion queue is full, try again in a few minutes!");
+                }
+                jobs.add(job);
+                return;
+            }
+        }
+        send(waiter, job);
+    }
+
+    @Override
+    public synchronized boolean withdraw(byte[] job) {
+        return jobs.remove(job);
+    }
+
+    @Override
+    public void onResult(Consumer<byte[]> handler) {
+        this.handler = handler;
+    }
+
+    private void handle(HttpServerRequest request) {
+        var response = request.response();
+        var header = request.getHeader("Authorization");
+        if (header == null || !MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8))) {
+            response.setStatusCode(401).end();
+            return;
+        }
+        if (request.method() != HttpMethod.POST) {
+            response.setStatusCode(405).end();
+            return;
+        }
+
+        switch (request.path()) {
+            case "/jobs/next":
+                next(request);
+                break;
+            case "/jobs/result":
+                result(request);
+                break;
+            default:
+                response.setStatusCode(404).end();
+                break;
+        }
+    }
+
+    // answers only once the result has been handled, so a worker knows whether it got through
+    private void result(HttpServerRequest request) {
+        var response = request.response();
+        var length = request.getHeader("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length) > maxResult) {
+                response.setStatusCode(413).end();
+                return;
+            }
+        } catch (NumberFormatException e) {
+            response.setStatusCode(400).end();
+            return;
+        }
+
+        var body = Buffer.buffer();
+        request.handler(chunk -> {
+            if (response.ended()) {
+                return;
+            }
+            if (body.length() + chunk.length() > maxResult) {
+                response.setStatusCode(413).end();
+                return;
+            }
+            body.appendBuffer(chunk);
+        });
+        request.endHandler(v -> {
+            if (response.ended()) {
+                return;
+            }
+            vertx.<Void>executeBlocking(future -> {
+                handler.accept(body.getBytes());
+                future.complete();
+            }, false, result -> {
+                if (result.failed()) {
+                    logger.error("Failed to handle a result!", result.cause());
+                }
+                if (!response.closed()) {
+                    response.setStatusCode(result.succeeded() ? 204 : 500).end();
+                }
+            });
+        });
+    }
+
+    private void next(HttpServerRequest request) {
+        var response = request.response();
+        long wait;
+        try {
+            var param = request.getParam("wait");
+            wait = param != null ? Math.min(Long.parseLong(param), maxWait) : maxWait;
+        } catch (NumberFormatException e) {
+            response.setStatusCode(400).end();
+            return;
+        }
+
+        byte[] job;
+        var waiter = new Waiter(vertx.getOrCreateContext(), response);
+        synchronized (this) {
+            job = jobs.poll();
+            if (job == null) {
+                waiters.add(waiter);
+            }
+        }
+        if (job != null) {
+            response.end(Buffer.buffer(job));
+            return;
+        }
+
+        // whoever takes the waiter out of the queue answers it, either with a job or with nothing
+        response.closeHandler(v -> withdraw(waiter));
+        vertx.setTimer(Math.max(wait, 1), id -> {
+            if (withdraw(waiter) && !response.closed()) {
+                response.setStatusCode(204).end();
+            }
+        });
+    }
+
+    private synchronized boolean withdraw(Waiter waiter) {
+        return waiters.remove(waiter);
+    }
+
+    private void send(Waiter waiter, byte[] job) {
+        waiter.context.runOnContext(v -> {
+            if (!waiter.response.closed()) {
+                waiter.response.end(Buffer.buffer(job));
+                return;
+            }
+
+            // the worker went away in the meantime, the job goes to the front of the line again
+            Waiter next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    jobs.addFirst(job);
+                    return;
+                }
+            }
+            send(next, job);
+        });
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final HttpServerResponse response;
+
+        private Waiter(Context context, HttpServerResponse response) {
+            this.context = context;
+            this.response = response;
+        }
+    }
+}
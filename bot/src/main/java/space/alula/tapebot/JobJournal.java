@@ -0,0 +1,295 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of accepted conversion requests, so the ones which were still queued or running when the process
+ * went down can be picked up again on the next start, without resolving their tracks again.
+ * <p>
+ * Every record is a length, a CRC32 and the payload; a record torn by a crash fails its checksum and everything from
+ * there on is dropped. Accepted requests are forced to disk before they're acknowledged, finished ones aren't, at
+ * worst a request is replayed which already got its file. The file is rewritten with only the unfinished requests
+ * once enough finished ones piled up.
+ */
+public class JobJournal {
+    private static final Logger logger = LoggerFactory.getLogger(JobJournal.class);
+    private static final int ACCEPTED = 1;
+    private static final int FINISHED = 2;
+    private static final int VERSION = 3;
+    // anything longer is certainly garbage from a torn write
+    private static final int maxRecord = 1048576;
+
+    private final Path path;
+    private final int compactAfter;
+    // everything below is guarded by this
+    private FileChannel channel;
+    // unfinished requests by id, with the payload of their ACCEPTED record, in the order they were accepted
+    private final Map<Long, byte[]> pending = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int finished;
+
+    public JobJournal(Path path, int compactAfter) throws IOException {
+        this.path = path;
+        this.compactAfter = compactAfter;
+        var parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        long valid = load();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // drops whatever a crash left behind after the last intact record
+        channel.truncate(valid);
+        channel.position(valid);
+        logger.info("Loaded job journal with {} unfinished requests", pending.size());
+    }
+
+    /**
+     * Records a request before it's acknowledged.
+     *
+     * @return id of the request, to be passed to {@link #finish(long)}
+     */
+    public synchronized long accept(Entry entry) throws IOException {
+        var id = nextId++;
+        var payload = entry.toBytes(id);
+        append(payload);
+        channel.force(false);
+        pending.put(id, payload);
+        return id;
+    }
+
+    /**
+     * Records that the request is done, successfully or not, so it won't be replayed.
+     */
+    public synchronized void finish(long id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+
+        try {
+            var payload = new ByteArrayOutputStream(16);
+            try (var out = new DataOutputStream(payload)) {
+                out.writeByte(FINISHED);
+                out.writeLong(id);
+            }
+            append(payload.toByteArray());
+
+            if (++finished >= compactAfter) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to record the end of request {}, it may be replayed", id, e);
+        }
+    }
+
+    /**
+     * @return requests which were accepted but never finished, oldest first
+     */
+    public synchronized List<Entry> unfinished() {
+        var entries = new ArrayList<Entry>(pending.size());
+        for (var payload : pending.values()) {
+            try {
+                entries.add(Entry.fromBytes(payload));
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn("Skipping a journaled request which can't be read", e);
+            }
+        }
+        return entries;
+    }
+
+    private void append(byte[] payload) throws IOException {
+        var crc = new CRC32();
+        crc.update(payload);
+        var record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    // writes the unfinished requests into a new file, which then replaces the journal atomically
+    private void compact() throws IOException {
+        var temporary = path.resolveSibling(path.getFileName() + ".compact");
+        try (var out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var previous = channel;
+            channel = out;
+            try {
+                for (var payload : pending.values()) {
+                    append(payload);
+                }
+                out.force(false);
+            } finally {
+                channel = previous;
+            }
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logger.debug("Compacted the job journal, dropped {} finished requests", finished);
+        finished = 0;
+    }
+
+    // reads the journal up to the first broken record, returns where that is
+    private long load() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long valid = 0;
+        try (var in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            while (in.available() >= 8) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > maxRecord || in.available() < length) {
+                    break;
+                }
+
+                var payload = in.readNBytes(length);
+                var crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                var record = new DataInputStream(new ByteArrayInputStream(payload));
+                int type = record.readUnsignedByte();
+                long id = record.readLong();
+                if (type == ACCEPTED) {
+                    pending.put(id, payload);
+                } else {
+                    pending.remove(id);
+                }
+                nextId = Math.max(nextId, id + 1);
+                valid += 8 + length;
+            }
+        }
+
+        if (valid < Files.size(path)) {
+            logger.warn("Dropping {} bytes of broken records at the end of the job journal", Files.size(path) - valid);
+        }
+        return valid;
+    }
+
+    /**
+     * A single request: the track serialized by lavaplayer, the variants it's converted into, and where to reply.
+     */
+    public static class Entry {
+        private final long id;
+        private final long guildId;
+        private final long channelId;
+        private final long userId;
+        private final List<ConversionOptions> variants;
+        private final byte[] track;
+
+        public Entry(long guildId, long channelId, long userId, List<ConversionOptions> variants, byte[] track) {
+            this(0, guildId, channelId, userId, variants, track);
+        }
+
+        private Entry(long id, long guildId, long channelId, long userId, List<ConversionOptions> variants,
+                      byte[] track) {
+            this.id = id;
+            this.guildId = guildId;
+            this.channelId = channelId;
+            this.userId = userId;
+            this.variants = variants;
+            this.track = track;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public long guildId() {
+            return guildId;
+        }
+
+        public long channelId() {
+            return channelId;
+        }
+
+        public long userId() {
+            return userId;
+        }
+
+        public List<ConversionOptions> variants() {
+            return variants;
+        }
+
+        public byte[] track() {
+            return track;
+        }
+
+        private byte[] toBytes(long id) throws IOException {
+            var bytes = new ByteArrayOutputStream(track.length + 64);
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeByte(ACCEPTED);
+                out.writeLong(id);
+                out.writeByte(VERSION);
+                out.writeLong(guildId);
+                out.writeLong(channelId);
+                out.writeLong(userId);
+                out.writeByte(variants.size());
+                for (var options : variants) {
+                    out.writeBoolean(options.newDfpwm());
+                    out.writeBoolean(options.segmented());
+                    out.writeInt(options.sampleRate());
+                    out.writeBoolean(options.verify());
+                    out.writeLong(options.from());
+                    out.writeLong(options.to());
+                }
+                out.writeInt(track.length);
+                out.write(track);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Entry fromBytes(byte[] payload) throws IOException {
+            try (var in = new DataInputStream(new ByteArrayInputStream(payload))) {
+                in.readUnsignedByte();
+                var id = in.readLong();
+                int version = in.readUnsignedByte();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported journal entry version " + version + ".");
+                }
+
+                var guildId = in.readLong();
+                var channelId = in.readLong();
+                var userId = in.readLong();
+                // entries from before multiple variants were a thing have exactly one
+                int count = version >= 3 ? in.readUnsignedByte() : 1;
+                var variants = new ArrayList<ConversionOptions>(count);
+                for (int i = 0; i < count; i++) {
+                    var options = new ConversionOptions(in.readBoolean(), in.readBoolean(), in.readInt(), in.readBoolean());
+                    // entries from before clips were a thing cover the whole track
+                    if (version >= 2) {
+                        options = options.clip(in.readLong(), in.readLong());
+                    }
+                    variants.add(options);
+                }
+                var track = new byte[in.readInt()];
+                in.readFully(track);
+                return new Entry(id, guildId, channelId, userId, variants, track);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package space.alula.tapebot;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where a worker gets its jobs from, the other end of a {@link JobTransport}.
+ */
+public interface JobSource {
+    /**
+     * Waits for the next job.
+     *
+     * @return the serialized {@link RemoteJob}, or null if there was none in time
+     */
+    byte[] next(long timeout, TimeUnit unit) throws IOException, InterruptedException;
+
+    /**
+     * Sends a serialized {@link RemoteResult} back to the gateway.
+     */
+    void reply(byte[] result) throws IOException;
+}
@@ -0,0 +1,30 @@
+package space.alula.tapebot;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * How a gateway hands conversions to workers, see {@link JobSource} for the worker side.
+ * Jobs and results are only ever passed around serialized, so every implementation behaves like a remote one.
+ */
+public interface JobTransport {
+    /**
+     * Queues the serialized {@link RemoteJob} for the next worker which asks for one.
+     *
+     * @throws RejectedExecutionException if too many jobs are waiting for a worker already
+     */
+    void dispatch(byte[] job);
+
+    /**
+     * Takes back a job which no worker picked up yet, the array has to be the one passed to {@link #dispatch}.
+     *
+     * @return false if a worker got it already
+     */
+    boolean withdraw(byte[] job);
+
+    /**
+     * Sets what's called with every serialized {@link RemoteResult} which comes back from a worker.
+     * It may be called on any thread except an event loop, so it's free to block.
+     */
+    void onResult(Consumer<byte[]> handler);
+}
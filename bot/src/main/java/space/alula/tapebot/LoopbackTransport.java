@@ -0,0 +1,46 @@
+package space.alula.tapebot;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Transport between a gateway and workers running in the same process, still passing everything serialized.
+ */
+public class LoopbackTransport implements JobTransport, JobSource {
+    private final LinkedBlockingQueue<byte[]> jobs;
+    private volatile Consumer<byte[]> handler = result -> {
+    };
+
+    public LoopbackTransport(int capacity) {
+        this.jobs = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void dispatch(byte[] job) {
+        if (!jobs.offer(job)) {
+            throw new RejectedExecutionException("The conversion queue is full, try again in a few minutes!");
+        }
+    }
+
+    @Override
+    public boolean withdraw(byte[] job) {
+        return jobs.remove(job);
+    }
+
+    @Override
+    public void onResult(Consumer<byte[]> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public byte[] next(long timeout, TimeUnit unit) throws InterruptedException {
+        return jobs.poll(timeout, unit);
+    }
+
+    @Override
+    public void reply(byte[] result) {
+        handler.accept(result);
+    }
+}
@@ -0,0 +1,71 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.Catnip;
+import com.mewna.catnip.CatnipOptions;
+import com.mewna.catnip.cache.CacheFlag;
+import com.mewna.catnip.shard.DiscordEvent.Raw;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+public class Main {
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("convert")) {
+            BatchCli.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("worker")) {
+            Worker.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        var options = new CatnipOptions(Env.require("TOKEN"))
+                .disabledEvents(Set.of(Raw.PRESENCE_UPDATE, Raw.VOICE_SERVER_UPDATE, Raw.VOICE_STATE_UPDATE,
+                        Raw.USER_UPDATE, Raw.MESSAGE_DELETE_BULK, Raw.TYPING_START, Raw.GUILD_MEMBERS_CHUNK,
+                        Raw.GUILD_MEMBER_REMOVE, Raw.GUILD_MEMBER_UPDATE, Raw.GUILD_MEMBER_ADD, Raw.MESSAGE_DELETE,
+                        Raw.MESSAGE_UPDATE, Raw.MESSAGE_EMBEDS_UPDATE, Raw.MESSAGE_REACTION_ADD, Raw.MESSAGE_REACTION_REMOVE,
+                        Raw.MESSAGE_REACTION_REMOVE_ALL))
+                .cacheFlags(Set.of(CacheFlag.DROP_EMOJI, CacheFlag.DROP_GAME_STATUSES, CacheFlag.DROP_VOICE_STATES))
+                .logUncachedPresenceWhenNotChunking(false)
+                .chunkMembers(false);
+        var catnip = Catnip.catnip(options);
+        var handler = new CommandHandler(catnip);
+
+        handler.registerCommands(Commands.class);
+
+        ProgressReporter.start(catnip.vertx());
+
+        var capacity = Integer.parseInt(Env.getOrDefault("CONVERTER_QUEUE_SIZE", "32"));
+        switch (Env.getOrDefault("CONVERSION_TRANSPORT", "local")) {
+            case "loopback":
+                var loopback = new LoopbackTransport(capacity);
+                RemoteConversions.start(loopback);
+                new Worker(loopback, Conversions.scheduler.workers()).start();
+                break;
+            case "http":
+                RemoteConversions.start(new HttpJobTransport(catnip.vertx(), Env.getOrDefault("WORKER_HOST", "127.0.0.1"),
+                        Integer.parseInt(Env.getOrDefault("WORKER_PORT", "9182")), Env.require("WORKER_SECRET"), capacity));
+                break;
+            default:
+                break;
+        }
+
+        var metricsPort = Integer.parseInt(Env.getOrDefault("METRICS_PORT", "0"));
+        if (metricsPort > 0) {
+            Metrics.serve(catnip.vertx(), metricsPort);
+        }
+
+        var apiPort = Integer.parseInt(Env.getOrDefault("HTTP_API_PORT", "0"));
+        if (apiPort > 0) {
+            HttpApi.serve(catnip.vertx(), Env.getOrDefault("HTTP_API_HOST", "127.0.0.1"), apiPort);
+        }
+
+        Conversions.replay(catnip);
+        catnip.connect();
+    }
+}
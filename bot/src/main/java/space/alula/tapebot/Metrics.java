@@ -0,0 +1,282 @@
+package space.alula.tapebot;
+
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide conversion metrics, shown in {@code tape stats} and served in the Prometheus text format.
+ * Everything is recorded into {@link LongAdder}s, so recording never blocks the converters, at the cost of
+ * snapshots being only roughly consistent with each other.
+ */
+public class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    public static final Histogram resolve = new Histogram("resolve");
+    public static final Histogram firstFrame = new Histogram("first_frame");
+    public static final Histogram decode = new Histogram("decode");
+    public static final Histogram encode = new Histogram("encode");
+    public static final Histogram upload = new Histogram("upload");
+    public static final Histogram download = new Histogram("download");
+    private static final List<Histogram> stages = List.of(resolve, download, firstFrame, decode, encode, upload);
+
+    public static final LongAdder conversions = new LongAdder();
+    public static final LongAdder encodedSamples = new LongAdder();
+    public static final LongAdder encodeNanos = new LongAdder();
+    public static final LongAdder resolveCacheHits = new LongAdder();
+    public static final LongAdder resolveCacheMisses = new LongAdder();
+    public static final LongAdder conversionCacheHits = new LongAdder();
+    public static final LongAdder conversionCacheMisses = new LongAdder();
+    // requests which joined a conversion of the same track that was already running
+    public static final LongAdder attached = new LongAdder();
+    // speed and round trip quality of every encoder configuration in use, by ConversionOptions.describe()
+    private static final Map<String, Variant> variants = new ConcurrentHashMap<>();
+
+    public enum Failure {
+        EXCEPTION, STUCK, LIMIT;
+
+        private final LongAdder count = new LongAdder();
+
+        public long count() {
+            return count.sum();
+        }
+    }
+
+    private Metrics() {
+        //
+    }
+
+    public static void failed(Throwable e) {
+        if (e instanceof TimeoutException) {
+            Failure.STUCK.count.increment();
+        } else if (e instanceof SpoolFile.LimitExceededException) {
+            Failure.LIMIT.count.increment();
+        } else {
+            Failure.EXCEPTION.count.increment();
+        }
+    }
+
+    public static void encoded(ConversionOptions options, long samples, long nanos) {
+        encodedSamples.add(samples);
+        encodeNanos.add(nanos);
+        var variant = variants.computeIfAbsent(options.describe(), k -> new Variant());
+        variant.samples.add(samples);
+        variant.nanos.add(nanos);
+    }
+
+    public static void verified(ConversionOptions options, double snr) {
+        if (Double.isFinite(snr)) {
+            var variant = variants.computeIfAbsent(options.describe(), k -> new Variant());
+            variant.snr.add(snr);
+            variant.verified.increment();
+        }
+    }
+
+    /**
+     * @return encoded samples per second spent encoding, since startup
+     */
+    public static long encodeThroughput() {
+        long nanos = encodeNanos.sum();
+        return nanos == 0 ? 0 : (long) (encodedSamples.sum() * 1e9 / nanos);
+    }
+
+    public static String hitRate(LongAdder hits, LongAdder misses) {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? "n/a" : String.format("%.1f%%", h * 100.0 / total);
+    }
+
+    /**
+     * Serves the metrics on {@code http://127.0.0.1:port/metrics}, the endpoint isn't meant to be exposed publicly.
+     */
+    public static void serve(Vertx vertx, int port) {
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    if (!"/metrics".equals(request.path())) {
+                        request.response().setStatusCode(404).end();
+                        return;
+                    }
+                    request.response()
+                            .putHeader("Content-Type", "text/plain; version=0.0.4")
+                            .end(prometheus());
+                })
+                .listen(port, "127.0.0.1", result -> {
+                    if (result.failed()) {
+                        logger.error("Failed to start the metrics endpoint on port {}!", port, result.cause());
+                    } else {
+                        logger.info("Serving metrics on http://127.0.0.1:{}/metrics", port);
+                    }
+                });
+    }
+
+    public static String prometheus() {
+        var out = new StringBuilder();
+        out.append("# TYPE tapebot_stage_seconds histogram\n");
+        for (var stage : stages) {
+            stage.write(out);
+        }
+
+        counter(out, "tapebot_conversions_total", conversions.sum());
+        counter(out, "tapebot_encoded_samples_total", encodedSamples.sum());
+        counter(out, "tapebot_encode_seconds_total", encodeNanos.sum() / 1e9);
+        counter(out, "tapebot_attached_requests_total", attached.sum());
+        counter(out, "tapebot_commands_total", CommandHandler.getInvokedCommands());
+
+        out.append("# TYPE tapebot_conversion_failures_total counter\n");
+        for (var failure : Failure.values()) {
+            out.append("tapebot_conversion_failures_total{reason=\"").append(failure.name().toLowerCase())
+                    .append("\"} ").append(failure.count()).append('\n');
+        }
+
+        out.append("# TYPE tapebot_cache_requests_total counter\n");
+        cache(out, "resolve", "hit", resolveCacheHits);
+        cache(out, "resolve", "miss", resolveCacheMisses);
+        cache(out, "conversion", "hit", conversionCacheHits);
+        cache(out, "conversion", "miss", conversionCacheMisses);
+
+        out.append("# TYPE tapebot_variant_encoded_samples_total counter\n");
+        variants.forEach((name, variant) -> labelled(out, "tapebot_variant_encoded_samples_total", name, variant.samples.sum()));
+        out.append("# TYPE tapebot_variant_encode_seconds_total counter\n");
+        variants.forEach((name, variant) -> labelled(out, "tapebot_variant_encode_seconds_total", name, variant.nanos.sum() / 1e9));
+        out.append("# TYPE tapebot_roundtrip_snr_db summary\n");
+        variants.forEach((name, variant) -> {
+            labelled(out, "tapebot_roundtrip_snr_db_sum", name, variant.snr.sum());
+            labelled(out, "tapebot_roundtrip_snr_db_count", name, variant.verified.sum());
+        });
+
+        gauge(out, "tapebot_queue_depth", Conversions.scheduler.queued());
+        gauge(out, "tapebot_active_conversions", Conversions.scheduler.active());
+        gauge(out, "tapebot_inflight_conversions", Conversions.inflight());
+        gauge(out, "tapebot_dispatched_conversions", RemoteConversions.dispatched());
+        gauge(out, "tapebot_cache_bytes", Conversions.cache.size());
+        gauge(out, "tapebot_reserved_bytes", Conversions.admission.reserved());
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, Number value) {
+        out.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void labelled(StringBuilder out, String name, String variant, Number value) {
+        out.append(name).append("{variant=\"").append(variant).append("\"} ").append(value).append('\n');
+    }
+
+    private static void cache(StringBuilder out, String cache, String result, LongAdder count) {
+        out.append("tapebot_cache_requests_total{cache=\"").append(cache).append("\",result=\"").append(result)
+                .append("\"} ").append(count.sum()).append('\n');
+    }
+
+    private static class Variant {
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final DoubleAdder snr = new DoubleAdder();
+        private final LongAdder verified = new LongAdder();
+    }
+
+    /**
+     * Latency histogram with fixed buckets, from 5 ms up to 5 minutes.
+     */
+    public static class Histogram {
+        private static final long[] bounds = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000};
+
+        private final String name;
+        // the last one counts everything above the highest bound
+        private final LongAdder[] buckets = new LongAdder[bounds.length + 1];
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram(String name) {
+            this.name = name;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < bounds.length && millis > bounds[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sum.add(nanos);
+        }
+
+        /**
+         * Times a stage from the given {@link System#nanoTime()} until now.
+         */
+        public void since(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        public long count() {
+            long count = 0;
+            for (var bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        /**
+         * @return upper bound of the bucket containing the given quantile in milliseconds, -1 if it's above all of them
+         */
+        public long quantile(double quantile) {
+            var counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return median and 95th percentile in a human readable form
+         */
+        public String summary() {
+            if (count() == 0) {
+                return "no data";
+            }
+            return "p50 " + bound(quantile(0.5)) + ", p95 " + bound(quantile(0.95)) + " (" + count() + ")";
+        }
+
+        private static String bound(long millis) {
+            if (millis < 0) {
+                return "`>" + StringUtil.prettyPeriod(bounds[bounds.length - 1]) + "`";
+            }
+            return millis < 1000 ? "`≤" + millis + "ms`" : "`≤" + StringUtil.prettyPeriod(millis) + "`";
+        }
+
+        private void write(StringBuilder out) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                var le = i < bounds.length ? String.valueOf(bounds[i] / 1000.0) : "+Inf";
+                out.append("tapebot_stage_seconds_bucket{stage=\"").append(name).append("\",le=\"").append(le)
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append("tapebot_stage_seconds_sum{stage=\"").append(name).append("\"} ").append(sum.sum() / 1e9).append('\n');
+            out.append("tapebot_stage_seconds_count{stage=\"").append(name).append("\"} ").append(cumulative).append('\n');
+        }
+    }
+}
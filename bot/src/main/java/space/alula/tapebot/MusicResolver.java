@@ -0,0 +1,218 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.bandcamp.BandcampAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.beam.BeamAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.soundcloud.SoundCloudAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.vimeo.VimeoAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class MusicResolver {
+    public static final AudioPlayerManager playerManager;
+    private static final long positiveTtl = TimeUnit.MINUTES.toMillis(Long.parseLong(Env.getOrDefault("RESOLVE_CACHE_TTL_MINUTES", "60")));
+    private static final long negativeTtl = TimeUnit.MINUTES.toMillis(1);
+    private static final int resolveCacheSize = Integer.parseInt(Env.getOrDefault("RESOLVE_CACHE_SIZE", "1024"));
+    private static final int maxPlaylistSize = Integer.parseInt(Env.getOrDefault("PLAYLIST_MAX_TRACKS", "100"));
+    private static final Map<String, Resolved> resolved = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Resolved> eldest) {
+                    return size() > resolveCacheSize;
+                }
+            });
+    private static final Map<String, CompletableFuture<Resolved>> pending = new ConcurrentHashMap<>();
+
+    static {
+        playerManager = new DefaultAudioPlayerManager();
+        playerManager.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_PCM_S16_LE);
+        playerManager.setFrameBufferDuration(500);
+        playerManager.registerSourceManager(new YoutubeAudioSourceManager());
+        playerManager.registerSourceManager(new SoundCloudAudioSourceManager());
+        playerManager.registerSourceManager(new VimeoAudioSourceManager());
+        playerManager.registerSourceManager(new BandcampAudioSourceManager());
+        playerManager.registerSourceManager(new BeamAudioSourceManager());
+        playerManager.registerSourceManager(new SafeHttpAudioSourceManager());
+    }
+
+    public static CompletionStage<AudioTrack> resolve(String query) {
+        return lookup(query).thenApply(Resolved::first);
+    }
+
+    /**
+     * Like {@link #resolve(String)}, but keeps every track of a playlist, in playlist order.
+     * Searches still resolve to their first result only.
+     */
+    public static CompletionStage<List<AudioTrack>> resolveAll(String query) {
+        return lookup(query).thenApply(Resolved::tracks);
+    }
+
+    private static CompletionStage<Resolved> lookup(String query) {
+        var key = normalize(query);
+        var cached = resolved.get(key);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            Metrics.resolveCacheHits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        Metrics.resolveCacheMisses.increment();
+
+        // concurrent lookups of the same query share a single load
+        var future = new CompletableFuture<Resolved>();
+        var existing = pending.putIfAbsent(key, future);
+        if (existing == null) {
+            var start = System.nanoTime();
+            future.whenComplete((result, e) -> Metrics.resolve.since(start));
+            load(key, future);
+            future.whenComplete((result, e) -> pending.remove(key, future));
+            existing = future;
+        }
+
+        // every caller gets its own track instances, they can't be played more than once
+        return existing;
+    }
+
+    public static byte[] encode(AudioTrack track) throws IOException {
+        var stream = new ByteArrayOutputStream();
+        var output = new MessageOutput(stream);
+        playerManager.encodeTrack(output, track);
+        output.finish();
+        return stream.toByteArray();
+    }
+
+    public static AudioTrack decode(byte[] data) throws IOException {
+        var holder = playerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(data)));
+        if (holder == null || holder.decodedTrack == null) {
+            throw new IOException("Cannot decode the track, its source may no longer be available.");
+        }
+        return holder.decodedTrack;
+    }
+
+    private static String normalize(String query) {
+        query = query.trim();
+        if (query.startsWith("<") && query.endsWith(">")) {
+            query = query.substring(1, query.length() - 1).trim();
+        }
+
+        // searches are case and whitespace insensitive, URLs aren't
+        var separator = query.indexOf(':');
+        if (separator > 0 && query.substring(0, separator).endsWith("search")) {
+            query = query.toLowerCase().replaceAll("\\s+", " ");
+        }
+        return query;
+    }
+
+    private static void load(String query, CompletableFuture<Resolved> future) {
+        playerManager.loadItem(query, new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack audioTrack) {
+                future.complete(store(query, Resolved.of(List.of(audioTrack), positiveTtl)));
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist audioPlaylist) {
+                var tracks = audioPlaylist.getTracks();
+                if (tracks.isEmpty()) {
+                    noMatches();
+                    return;
+                }
+                var count = audioPlaylist.isSearchResult() ? 1 : Math.min(tracks.size(), maxPlaylistSize);
+                future.complete(store(query, Resolved.of(tracks.subList(0, count), positiveTtl)));
+            }
+
+            @Override
+            public void noMatches() {
+                future.complete(store(query, new Resolved(new byte[0][], new AudioTrack[0], negativeTtl)));
+            }
+
+            @Override
+            public void loadFailed(FriendlyException e) {
+                // most likely transient, don't cache
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private static Resolved store(String query, Resolved result) {
+        resolved.put(query, result);
+        return result;
+    }
+
+    private static class Resolved {
+        // one of both is set for every track
+        private final byte[][] encoded;
+        private final AudioTrack[] templates;
+        private final long expiresAt;
+
+        private Resolved(byte[][] encoded, AudioTrack[] templates, long ttl) {
+            this.encoded = encoded;
+            this.templates = templates;
+            this.expiresAt = System.currentTimeMillis() + ttl;
+        }
+
+        private static Resolved of(List<AudioTrack> tracks, long ttl) {
+            var encoded = new byte[tracks.size()][];
+            var templates = new AudioTrack[tracks.size()];
+            for (int i = 0; i < tracks.size(); i++) {
+                try {
+                    encoded[i] = encode(tracks.get(i));
+                } catch (IOException e) {
+                    // not every source can serialize its tracks, keep the instance around and clone it instead
+                    templates[i] = tracks.get(i);
+                }
+            }
+            return new Resolved(encoded, templates, ttl);
+        }
+
+        private AudioTrack first() {
+            if (encoded.length == 0) {
+                throw new IllegalArgumentException("Cannot find anything for specified query!");
+            }
+            return track(0);
+        }
+
+        private List<AudioTrack> tracks() {
+            if (encoded.length == 0) {
+                throw new IllegalArgumentException("Cannot find anything for specified query!");
+            }
+
+            var tracks = new ArrayList<AudioTrack>(encoded.length);
+            for (int i = 0; i < encoded.length; i++) {
+                tracks.add(track(i));
+            }
+            return tracks;
+        }
+
+        private AudioTrack track(int index) {
+            if (templates[index] != null) {
+                return templates[index].makeClone();
+            }
+
+            try {
+                return decode(encoded[index]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package space.alula.tapebot;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Turns 48 kHz stereo S16 frames into signed 8-bit mono PCM at the target sample rate in a single pass:
+ * both channels are mixed, resampled with a polyphase windowed-sinc filter and quantized.
+ * Nothing is allocated per frame, and the filter state carries over from one frame to the next.
+ */
+public class PcmFrontEnd {
+    public static final int SOURCE_RATE = 48000;
+    private static final int TAPS = 24;
+    // every phase has its own TAPS coefficients, rates like 47999 Hz would need tens of megabytes of them
+    private static final int MAX_PHASES = 1024;
+
+    private final int targetRate;
+    private final int up;
+    private final int down;
+    // reversed coefficients of every phase, phase * TAPS + tap
+    private final float[] coefficients;
+    // last TAPS samples, written twice so a whole window can always be read without wrapping around
+    private final float[] history = new float[TAPS * 2];
+    private int newest;
+    private int phase;
+
+    public PcmFrontEnd(int targetRate) {
+        if (!supports(targetRate)) {
+            throw new IllegalArgumentException("Sample rate of " + targetRate + " Hz is not supported, use a rate up to "
+                    + SOURCE_RATE + " Hz with a simple ratio to it, like 32768 or 44100 Hz!");
+        }
+
+        int gcd = gcd(targetRate, SOURCE_RATE);
+        this.targetRate = targetRate;
+        this.up = targetRate / gcd;
+        this.down = SOURCE_RATE / gcd;
+        this.coefficients = up == down ? null : design(up, down);
+    }
+
+    /**
+     * @return whether the rate is in range and resamples from 48 kHz with a reasonably small filter
+     */
+    public static boolean supports(int targetRate) {
+        return targetRate > 0 && targetRate <= SOURCE_RATE && targetRate / gcd(targetRate, SOURCE_RATE) <= MAX_PHASES;
+    }
+
+    public int targetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return size of the output buffer required for a frame with the given number of stereo samples
+     */
+    public int maxOutput(int samples) {
+        return (int) ((long) samples * up / down) + 2;
+    }
+
+    /**
+     * Processes one frame of interleaved stereo samples.
+     *
+     * @return number of 8-bit samples written to the start of dest
+     */
+    public int process(ShortBuffer frame, int samples, byte[] dest) {
+        if (coefficients == null) {
+            for (int i = 0; i < samples; i++) {
+                dest[i] = quantize((frame.get(i * 2) + frame.get(i * 2 + 1)) * 0.5f);
+            }
+            return samples;
+        }
+
+        int written = 0;
+        for (int i = 0; i < samples; i++) {
+            float sample = (frame.get(i * 2) + frame.get(i * 2 + 1)) * 0.5f;
+            newest = newest == TAPS - 1 ? 0 : newest + 1;
+            history[newest] = sample;
+            history[newest + TAPS] = sample;
+
+            // every output sample falling between this input sample and the next one
+            while (phase < up) {
+                int offset = phase * TAPS;
+                int window = newest + 1;
+                float sum = 0;
+                for (int tap = 0; tap < TAPS; tap++) {
+                    sum += coefficients[offset + tap] * history[window + tap];
+                }
+                dest[written++] = quantize(sum);
+                phase += down;
+            }
+            phase -= up;
+        }
+        return written;
+    }
+
+    private static byte quantize(float sample) {
+        int value = Math.round(sample * (1f / 256));
+        return (byte) Math.max(-128, Math.min(127, value));
+    }
+
+    // windowed-sinc low-pass at the lower of both Nyquist frequencies, split into one sub-filter per phase
+    private static float[] design(int up, int down) {
+        int length = TAPS * up;
+        double cutoff = 0.5 / Math.max(up, down) * 0.9;
+        double center = (length - 1) / 2.0;
+
+        var coefficients = new float[length];
+        for (int phase = 0; phase < up; phase++) {
+            for (int tap = 0; tap < TAPS; tap++) {
+                int n = phase + tap * up;
+                double x = n - center;
+                double sinc = x == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+                double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * n / (length - 1))
+                        + 0.08 * Math.cos(4 * Math.PI * n / (length - 1));
+                // up compensates for the zeros stuffed in between input samples
+                coefficients[phase * TAPS + (TAPS - 1 - tap)] = (float) (2 * cutoff * sinc * window * up);
+            }
+        }
+        return coefficients;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,124 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.entity.message.Message;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the status message of every running conversion up to date by editing it.
+ * <p>
+ * All edits go through a single periodic tick: a message is only edited if its text changed since the last edit
+ * and no earlier edit of it is still in flight, and every tick edits at most {@code PROGRESS_EDITS_PER_TICK} messages
+ * overall and a couple per channel, least recently edited first. However many conversions are running, progress
+ * reporting never uses more than that share of the REST rate limits.
+ */
+public class ProgressReporter {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressReporter.class);
+    private static final long interval = TimeUnit.SECONDS.toMillis(Long.parseLong(Env.getOrDefault("PROGRESS_INTERVAL_SECONDS", "5")));
+    private static final int editsPerTick = Integer.parseInt(Env.getOrDefault("PROGRESS_EDITS_PER_TICK", "20"));
+    // Discord allows 5 message edits per 5 seconds in a channel, leave some room for everything else
+    private static final int editsPerChannel = 2;
+    private static final Map<Long, Tracker> trackers = new ConcurrentHashMap<>();
+
+    private ProgressReporter() {
+        //
+    }
+
+    public static void start(Vertx vertx) {
+        vertx.setPeriodic(interval, id -> tick());
+    }
+
+    /**
+     * Reports the progress of the job by editing the message, until the job finishes.
+     */
+    public static void track(Message message, ConversionJob job) {
+        trackers.put(message.idAsLong(), new Tracker(message, job));
+    }
+
+    private static void tick() {
+        var pending = new ArrayList<Tracker>();
+        for (var tracker : trackers.values()) {
+            if (tracker.editing) continue;
+
+            tracker.next = tracker.render();
+            if (tracker.next == null || tracker.next.equals(tracker.last)) {
+                if (tracker.job.result().isDone()) {
+                    trackers.remove(tracker.message.idAsLong());
+                }
+                continue;
+            }
+            pending.add(tracker);
+        }
+
+        pending.sort(Comparator.comparingLong(tracker -> tracker.lastEdit));
+        var channels = new HashMap<Long, Integer>();
+        int edits = 0;
+        for (var tracker : pending) {
+            if (edits >= editsPerTick) break;
+            if (channels.merge(tracker.message.channelIdAsLong(), 1, Integer::sum) > editsPerChannel) continue;
+
+            edits++;
+            tracker.edit();
+        }
+    }
+
+    private static class Tracker {
+        private final Message message;
+        private final ConversionJob job;
+        private final String title;
+        // only touched on the event loop, except for the flag which the edit callback clears
+        private volatile boolean editing;
+        private String last;
+        private String next;
+        private long lastEdit;
+
+        private Tracker(Message message, ConversionJob job) {
+            this.message = message;
+            this.job = job;
+            this.title = StringUtil.codeEscape(job.track().getInfo().title);
+        }
+
+        private String render() {
+            var result = job.result();
+            if (result.isDone()) {
+                if (result.isCompletedExceptionally()) {
+                    return CommandContext.ERROR_ICON + "  |  Conversion of `" + title + "` failed.";
+                }
+                return CommandContext.SUCCESS_ICON + "  |  Converted `" + title + "` in `"
+                        + StringUtil.prettyPeriod(job.elapsed()) + "`.";
+            }
+            if (!job.started()) {
+                // the message still says where it is in the queue
+                return null;
+            }
+
+            var duration = job.options().length(job.track());
+            var position = Math.min(job.position(), duration);
+            var elapsed = Math.max(job.elapsed(), 1);
+            return CommandContext.SUCCESS_ICON + "  |  Converting `" + title + "`: `" + position * 100 / Math.max(duration, 1)
+                    + "%` (`" + StringUtil.prettyPeriod(position) + "` / `" + StringUtil.prettyPeriod(duration) + "`), "
+                    + String.format("`%.1fx` realtime.", (double) position / elapsed);
+        }
+
+        private void edit() {
+            var text = next;
+            editing = true;
+            lastEdit = System.currentTimeMillis();
+            message.edit(text).whenComplete((edited, e) -> {
+                if (e != null) {
+                    logger.debug("Failed to update progress of {}", message.idAsLong(), e);
+                }
+                last = text;
+                editing = false;
+            });
+        }
+    }
+}
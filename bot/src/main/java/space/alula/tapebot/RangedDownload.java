@@ -0,0 +1,325 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoProvider;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads a file over several connections at once, each fetching its own byte range, into a temporary file which
+ * is then decoded from. Only used when the server says it supports ranges, otherwise tracks are streamed as usual.
+ */
+public class RangedDownload {
+    private static final Logger logger = LoggerFactory.getLogger(RangedDownload.class);
+    private static final int connections = Integer.parseInt(Env.getOrDefault("DOWNLOAD_CONNECTIONS", "4"));
+    private static final long maxSize = Long.parseLong(Env.getOrDefault("DOWNLOAD_MAX_SIZE_MB", "256")) * 1048576;
+    // smaller files aren't worth more than one connection
+    private static final long minPart = 1048576;
+    // extra connections for all downloads together, so they can't take the whole pool from streaming tracks
+    private static final Semaphore extraConnections = new Semaphore(Math.max(1, SafeHttpAudioSourceManager.poolSize / 2));
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final ExecutorService pool = Executors.newCachedThreadPool(task -> {
+        var thread = new Thread(task, "Range download #" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RangedDownload() {
+        //
+    }
+
+    /**
+     * @return the whole file, deleted once the stream is closed, or null if it has to be streamed instead
+     * @throws InterruptedIOException if interrupted while downloading, other failures fall back to streaming
+     */
+    public static SeekableInputStream fetch(SafeHttpAudioSourceManager sourceManager, URI uri) throws InterruptedIOException {
+        long length;
+        try (var httpInterface = sourceManager.getHttpInterface();
+             var response = httpInterface.execute(new HttpHead(uri))) {
+            var ranges = HttpClientTools.getHeaderValue(response, "Accept-Ranges");
+            var contentLength = HttpClientTools.getHeaderValue(response, "Content-Length");
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || contentLength == null
+                    || ranges == null || !ranges.toLowerCase().contains("bytes")) {
+                return null;
+            }
+            length = Long.parseLong(contentLength);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Cannot check whether {} supports ranges", uri, e);
+            return null;
+        }
+        if (length <= 0 || length > maxSize) {
+            return null;
+        }
+
+        var start = System.nanoTime();
+        Path path = null;
+        try {
+            Files.createDirectories(SpoolFile.directory());
+            path = Files.createTempFile(SpoolFile.directory(), "tapebot-", ".download");
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                download(sourceManager, uri, channel, length);
+            }
+            Metrics.download.since(start);
+            return new FileStream(path, length);
+        } catch (InterruptedIOException e) {
+            delete(path);
+            throw e;
+        } catch (IOException e) {
+            logger.warn("Ranged download of {} failed, streaming it instead", uri, e);
+            delete(path);
+            return null;
+        }
+    }
+
+    private static void download(SafeHttpAudioSourceManager sourceManager, URI uri, FileChannel channel, long length)
+            throws IOException {
+        int wanted = (int) Math.max(1, Math.min(connections, length / minPart));
+        // the first part takes the connection a streamed track would have, the others need a free slot each
+        int extra = 0;
+        while (extra < wanted - 1 && extraConnections.tryAcquire()) {
+            extra++;
+        }
+        try {
+            download(sourceManager, uri, channel, length, 1 + extra);
+        } finally {
+            extraConnections.release(extra);
+        }
+    }
+
+    private static void download(SafeHttpAudioSourceManager sourceManager, URI uri, FileChannel channel, long length,
+                                 int count) throws IOException {
+        var parts = new ArrayList<Part>(count);
+        for (int i = 0; i < count; i++) {
+            parts.add(new Part(uri, length * i / count, length * (i + 1) / count));
+        }
+
+        // the first failure stops the other parts, it's the one worth reporting
+        var failure = new AtomicReference<Throwable>();
+        var futures = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            var part = parts.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> part.run(sourceManager, channel), pool)
+                    .whenComplete((ignored, e) -> {
+                        if (e != null && failure.compareAndSet(null, e)) {
+                            parts.forEach(Part::abort);
+                        }
+                    });
+        }
+
+        try {
+            CompletableFuture.allOf(futures).get();
+        } catch (InterruptedException e) {
+            parts.forEach(Part::abort);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            var cause = failure.get();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void delete(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete download {}", path, e);
+        }
+    }
+
+    private static class Part {
+        private final URI uri;
+        private final long end;
+        private long position;
+        private volatile HttpGet request;
+        private volatile boolean aborted;
+
+        private Part(URI uri, long start, long end) {
+            this.uri = uri;
+            this.position = start;
+            this.end = end;
+        }
+
+        private void run(SafeHttpAudioSourceManager sourceManager, FileChannel channel) {
+            try {
+                try {
+                    fetch(sourceManager, channel);
+                } catch (IOException e) {
+                    if (aborted) throw e;
+                    // one more go for whatever is left, connections to CDNs drop now and then
+                    logger.debug("Range of {} failed at {}, retrying", uri, position, e);
+                    fetch(sourceManager, channel);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void fetch(SafeHttpAudioSourceManager sourceManager, FileChannel channel) throws IOException {
+            var get = new HttpGet(uri);
+            get.setHeader("Range", "bytes=" + position + "-" + (end - 1));
+            request = get;
+            if (aborted) {
+                throw new InterruptedIOException();
+            }
+
+            try (var httpInterface = sourceManager.getHttpInterface();
+                 var response = httpInterface.execute(get)) {
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException("Server responded with status " + response.getStatusLine().getStatusCode()
+                            + " to a range request.");
+                }
+
+                var buffer = new byte[65536];
+                try (var in = response.getEntity().getContent()) {
+                    int n;
+                    while (position < end && (n = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) > 0) {
+                        var chunk = ByteBuffer.wrap(buffer, 0, n);
+                        while (chunk.hasRemaining()) {
+                            position += channel.write(chunk, position);
+                        }
+                    }
+                }
+            }
+            if (position < end) {
+                throw new IOException("Range ended " + (end - position) + " bytes early.");
+            }
+        }
+
+        private void abort() {
+            aborted = true;
+            var get = request;
+            if (get != null) {
+                get.abort();
+            }
+        }
+    }
+
+    /**
+     * Reads the downloaded file, seeking is just moving the position.
+     */
+    private static class FileStream extends SeekableInputStream {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(65536).limit(0);
+        private long position;
+
+        private FileStream(Path path, long length) throws IOException {
+            super(length, 0);
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            position++;
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, contentLength - position));
+            if (skipped <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) skipped);
+            } else {
+                buffer.limit(0);
+            }
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, contentLength - position);
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        protected void seekHard(long position) {
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        @Override
+        public boolean canSeekHard() {
+            return true;
+        }
+
+        @Override
+        public List<AudioTrackInfoProvider> getTrackInfoProviders() {
+            return List.of();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            // in case the file system didn't honor DELETE_ON_CLOSE
+            delete(path);
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            buffer.flip();
+            return n > 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gateway side of distributed conversions: jobs are sent to workers through a {@link JobTransport} instead of
+ * being converted in this process, and their results are put into the local conversion cache as they come back.
+ */
+public class RemoteConversions {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteConversions.class);
+    // a worker which died or lost its connection never replies, its jobs fail after this
+    private static final long timeout = TimeUnit.MINUTES.toMillis(Long.parseLong(Env.getOrDefault("REMOTE_JOB_TIMEOUT_MINUTES", "15")));
+    private static final Map<String, ConversionJob> dispatched = new ConcurrentHashMap<>();
+    private static volatile JobTransport transport;
+
+    private RemoteConversions() {
+        //
+    }
+
+    public static void start(JobTransport transport) {
+        transport.onResult(RemoteConversions::completed);
+        RemoteConversions.transport = transport;
+    }
+
+    public static boolean enabled() {
+        return transport != null;
+    }
+
+    /**
+     * Sends the job to a worker, or queues it locally if its track can't be serialized.
+     *
+     * @return number of jobs which went out before this one and aren't done yet
+     * @throws java.util.concurrent.RejectedExecutionException if the queue is full
+     */
+    static int submit(long guildId, long userId, ConversionJob job) {
+        byte[] track;
+        try {
+            track = MusicResolver.encode(job.track());
+        } catch (IOException e) {
+            logger.debug("Cannot serialize {}, converting it locally", job.key(), e);
+            return Conversions.scheduler.submit(guildId, userId, new ConverterThread(job, Conversions.cache));
+        }
+
+        // registered first, a worker may be done with it before dispatch() even returns
+        int ahead = dispatched.size();
+        dispatched.put(job.key(), job);
+        var data = new RemoteJob(job.key(), guildId, userId, job.options(), track).toBytes();
+        try {
+            transport.dispatch(data);
+        } catch (RuntimeException e) {
+            dispatched.remove(job.key(), job);
+            throw e;
+        }
+        job.result().whenComplete((file, e) -> dispatched.remove(job.key(), job));
+        CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(() -> {
+            if (job.result().isDone()) {
+                return;
+            }
+            // nobody would be waiting for the result anymore
+            if (transport.withdraw(data)) {
+                logger.debug("Withdrew {} before any worker took it", job.key());
+                job.result().completeExceptionally(new WorkerException("No worker picked up the conversion in time."));
+            } else {
+                job.result().completeExceptionally(new WorkerException("No worker finished the conversion in time."));
+            }
+        });
+        return ahead;
+    }
+
+    public static int dispatched() {
+        return dispatched.size();
+    }
+
+    private static void completed(byte[] data) {
+        RemoteResult result;
+        try {
+            result = RemoteResult.fromBytes(data);
+        } catch (IOException e) {
+            logger.error("Received a result which can't be read!", e);
+            return;
+        }
+
+        var job = dispatched.get(result.id());
+        if (job == null) {
+            logger.debug("Received the result of {} after it timed out", result.id());
+            return;
+        }
+        if (result.error() != null) {
+            job.result().completeExceptionally(new WorkerException(result.error()));
+            return;
+        }
+
+        try (var spool = new SpoolFile(ConverterThread.uploadLimit)) {
+            spool.write(result.data(), 0, result.data().length);
+            var file = Conversions.cache.put(job.key(), spool);
+            job.result().complete(file);
+            Conversions.cache.release(job.key());
+        } catch (IOException e) {
+            logger.error("Failed to store the result of {}!", result.id(), e);
+            job.result().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A conversion which failed on a worker, the message is meant for the user.
+     */
+    public static class WorkerException extends Exception {
+        public WorkerException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package space.alula.tapebot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A conversion as it's sent to a worker: the track serialized by lavaplayer, the options, and who it's for.
+ * Results are routed back to the gateway by id, guild and user let workers keep scheduling fair.
+ */
+public class RemoteJob {
+    private static final int VERSION = 2;
+
+    private final String id;
+    private final long guildId;
+    private final long userId;
+    private final ConversionOptions options;
+    private final byte[] track;
+
+    public RemoteJob(String id, long guildId, long userId, ConversionOptions options, byte[] track) {
+        this.id = id;
+        this.guildId = guildId;
+        this.userId = userId;
+        this.options = options;
+        this.track = track;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long guildId() {
+        return guildId;
+    }
+
+    public long userId() {
+        return userId;
+    }
+
+    public ConversionOptions options() {
+        return options;
+    }
+
+    /**
+     * @return the track as encoded by {@link MusicResolver#encode}
+     */
+    public byte[] track() {
+        return track;
+    }
+
+    public byte[] toBytes() {
+        var bytes = new ByteArrayOutputStream(track.length + 128);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(id);
+            out.writeLong(guildId);
+            out.writeLong(userId);
+            out.writeBoolean(options.newDfpwm());
+            out.writeBoolean(options.segmented());
+            out.writeInt(options.sampleRate());
+            out.writeBoolean(options.verify());
+            out.writeLong(options.from());
+            out.writeLong(options.to());
+            out.writeInt(track.length);
+            out.write(track);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RemoteJob fromBytes(byte[] data) throws IOException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported job version " + version + ".");
+            }
+
+            var id = in.readUTF();
+            var guildId = in.readLong();
+            var userId = in.readLong();
+            var options = new ConversionOptions(in.readBoolean(), in.readBoolean(), in.readInt(), in.readBoolean(),
+                    in.readLong(), in.readLong());
+            var track = new byte[in.readInt()];
+            in.readFully(track);
+            return new RemoteJob(id, guildId, userId, options, track);
+        }
+    }
+}
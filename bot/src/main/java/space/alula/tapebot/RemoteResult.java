@@ -0,0 +1,85 @@
+package space.alula.tapebot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * What a worker sends back for a {@link RemoteJob}: either the converted file or why the conversion failed.
+ */
+public class RemoteResult {
+    private static final int VERSION = 1;
+
+    private final String id;
+    private final byte[] data;
+    private final String error;
+
+    private RemoteResult(String id, byte[] data, String error) {
+        this.id = id;
+        this.data = data;
+        this.error = error;
+    }
+
+    public static RemoteResult success(String id, byte[] data) {
+        return new RemoteResult(id, data, null);
+    }
+
+    public static RemoteResult failure(String id, String error) {
+        return new RemoteResult(id, null, error);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the DFPWM file, null if the conversion failed
+     */
+    public byte[] data() {
+        return data;
+    }
+
+    /**
+     * @return message of the failure, null if the conversion succeeded
+     */
+    public String error() {
+        return error;
+    }
+
+    public byte[] toBytes() {
+        var bytes = new ByteArrayOutputStream(data != null ? data.length + 128 : 256);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(id);
+            out.writeBoolean(data != null);
+            if (data != null) {
+                out.writeInt(data.length);
+                out.write(data);
+            } else {
+                out.writeUTF(error);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RemoteResult fromBytes(byte[] data) throws IOException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported result version " + version + ".");
+            }
+
+            var id = in.readUTF();
+            if (in.readBoolean()) {
+                var file = new byte[in.readInt()];
+                in.readFully(file);
+                return success(id, file);
+            }
+            return failure(id, in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package space.alula.tapebot;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Measures how close encoded audio sounds to its input while the conversion is running: the DFPWM output is
+ * decoded as it's written and compared against the PCM which went into the encoder, sample by sample.
+ * <p>
+ * Only the input the encoder hasn't produced output for yet is kept around, which is a few samples for
+ * the sequential encoder and up to the segments in flight for the segmented one.
+ */
+public class RoundTripMeter {
+    private final DFPWM decoder;
+    private byte[] pending = new byte[8192];
+    private int head;
+    private int size;
+    private byte[] decoded = new byte[8192];
+    private double signal;
+    private double noise;
+    private long samples;
+
+    public RoundTripMeter(boolean newdfpwm) {
+        this.decoder = new DFPWM(newdfpwm);
+    }
+
+    /**
+     * Remembers PCM samples which are about to be written to the encoder.
+     */
+    public void input(byte[] pcm, int off, int len) {
+        if (size + len > pending.length) {
+            grow(size + len);
+        }
+
+        int tail = (head + size) & (pending.length - 1);
+        int first = Math.min(len, pending.length - tail);
+        System.arraycopy(pcm, off, pending, tail, first);
+        System.arraycopy(pcm, off + first, pending, 0, len - first);
+        size += len;
+    }
+
+    /**
+     * @return stream which measures DFPWM data written to it before passing it on
+     */
+    public OutputStream wrap(OutputStream out) {
+        return new FilterOutputStream(out) {
+            private final byte[] single = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                single[0] = (byte) b;
+                write(single, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                output(b, off, len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return signal to noise ratio of the decoded output in dB
+     */
+    public double snr() {
+        return noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / noise);
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    private void output(byte[] dfpwm, int off, int len) {
+        if (decoded.length < len * 8) {
+            decoded = new byte[len * 8];
+        }
+        decoder.decompress(decoded, dfpwm, 0, off, len);
+
+        // padding at the very end has no input to compare against
+        int count = Math.min(len * 8, size);
+        int mask = pending.length - 1;
+        for (int i = 0; i < count; i++) {
+            int expected = pending[(head + i) & mask];
+            int error = decoded[i] - expected;
+            signal += expected * expected;
+            noise += error * error;
+        }
+        head = (head + count) & mask;
+        size -= count;
+        samples += count;
+    }
+
+    private void grow(int needed) {
+        int capacity = pending.length;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+
+        var grown = new byte[capacity];
+        int first = Math.min(size, pending.length - head);
+        System.arraycopy(pending, head, grown, 0, first);
+        System.arraycopy(pending, 0, grown, first, size - first);
+        pending = grown;
+        head = 0;
+    }
+}
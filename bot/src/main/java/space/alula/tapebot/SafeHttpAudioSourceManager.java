@@ -31,6 +31,7 @@ import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoBuilder;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 
 import java.io.DataInput;
@@ -38,7 +39,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -52,8 +53,11 @@ import static com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools.getHeade
  */
 @SuppressWarnings("Duplicates")
 public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implements HttpConfigurable {
-    // TODO allow user to configure whitelist
-    private final List<String> trustedDomains;
+    private static final HostAllowlist defaultTrustedHosts =
+            HostAllowlist.parse(Env.getOrDefault("TRUSTED_HOSTS", "media.discordapp.com,cdn.discordapp.com"));
+    static final int poolSize = Integer.parseInt(Env.getOrDefault("HTTP_POOL_SIZE", "16"));
+    private static final long idleTimeout = TimeUnit.SECONDS.toMillis(30);
+    private final HostAllowlist trustedHosts;
     private final HttpInterfaceManager httpInterfaceManager;
     private final MediaContainerRegistry registry;
 
@@ -62,17 +66,22 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
     }
 
     public SafeHttpAudioSourceManager(MediaContainerRegistry registry) {
-        this(registry, List.of("media.discordapp.com", "cdn.discordapp.com"));
+        this(registry, defaultTrustedHosts);
     }
 
-    public SafeHttpAudioSourceManager(MediaContainerRegistry registry, List<String> trustedDomains) {
+    public SafeHttpAudioSourceManager(MediaContainerRegistry registry, HostAllowlist trustedHosts) {
         this.registry = registry;
-        this.trustedDomains = trustedDomains;
+        this.trustedHosts = trustedHosts;
 
-        httpInterfaceManager = new ThreadLocalHttpInterfaceManager(
+        // one bounded pool for loader and converter threads alike, idle connections are kept for the next request
+        httpInterfaceManager = new SimpleHttpInterfaceManager(
                 HttpClientTools
                         .createSharedCookiesHttpBuilder()
-                        .setRedirectStrategy(new HttpClientTools.NoRedirectsStrategy()),
+                        .setRedirectStrategy(new HttpClientTools.NoRedirectsStrategy())
+                        .setMaxConnTotal(poolSize)
+                        .setMaxConnPerRoute(poolSize)
+                        .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                        .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS),
                 HttpClientTools.DEFAULT_REQUEST_CONFIG
         );
     }
@@ -85,7 +94,7 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
     @Override
     public AudioItem loadItem(DefaultAudioPlayerManager manager, AudioReference reference) {
         AudioReference httpReference = getAsHttpReference(reference);
-        if (httpReference == null) {
+        if (httpReference == null || !isTrusted(httpReference.identifier)) {
             return null;
         }
 
@@ -98,7 +107,7 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
 
     @Override
     protected AudioTrack createTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerDescriptor) {
-        return new HttpAudioTrack(trackInfo, containerDescriptor, this);
+        return new SpooledHttpAudioTrack(trackInfo, containerDescriptor, this);
     }
 
     /**
@@ -118,6 +127,15 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
         httpInterfaceManager.configureBuilder(configurator);
     }
 
+    // checked before anything is sent anywhere, redirects come back through loadItem and get checked as well
+    private boolean isTrusted(String identifier) {
+        try {
+            return trustedHosts.allows(new URI(identifier).getHost());
+        } catch (URISyntaxException e) {
+            throw new FriendlyException("Not a valid URL.", COMMON, e);
+        }
+    }
+
     private MediaContainerDetectionResult detectContainer(AudioReference reference) {
         MediaContainerDetectionResult result;
 
@@ -132,8 +150,6 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
 
     private MediaContainerDetectionResult detectContainerWithClient(HttpInterface httpInterface, AudioReference reference) throws IOException {
         try (PersistentHttpStream inputStream = new PersistentHttpStream(httpInterface, new URI(reference.identifier), Long.MAX_VALUE)) {
-            if (!trustedDomains.contains(new URI(reference.identifier).getHost().toLowerCase())) return null;
-
             int statusCode = inputStream.checkStatusCode();
             String redirectUrl = HttpClientTools.getRedirectLocation(reference.identifier, inputStream.getCurrentResponse());
 
@@ -167,7 +183,7 @@ public class SafeHttpAudioSourceManager extends HttpAudioSourceManager implement
         MediaContainerDescriptor containerTrackFactory = decodeTrackFactory(input);
 
         if (containerTrackFactory != null) {
-            return new HttpAudioTrack(trackInfo, containerTrackFactory, this);
+            return new SpooledHttpAudioTrack(trackInfo, containerTrackFactory, this);
         }
 
         return null;
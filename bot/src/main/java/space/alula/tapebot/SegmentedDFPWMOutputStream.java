@@ -0,0 +1,141 @@
+package space.alula.tapebot;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Encodes signed 8-bit PCM in fixed-size segments on a fork-join pool, writing the DFPWM data in order.
+ * <p>
+ * Every segment is encoded by a fresh encoder which is first warmed up on the samples preceding the segment,
+ * so its state is close to what a sequential encoder would have at that point. The output is therefore
+ * not bit-identical to {@link DFPWMOutputStream}, see {@link SegmentedEncoderHarness} for how much it differs.
+ */
+public class SegmentedDFPWMOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_SEGMENT_SIZE = 65536;
+    public static final int DEFAULT_WARMUP_SIZE = 4096;
+
+    private final boolean newdfpwm;
+    private final int warmup;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] segment;
+    private int start;
+    private int position;
+    private boolean finished;
+
+    public SegmentedDFPWMOutputStream(OutputStream out, boolean newdfpwm) {
+        this(out, newdfpwm, DEFAULT_SEGMENT_SIZE, DEFAULT_WARMUP_SIZE, ForkJoinPool.commonPool(),
+                ForkJoinPool.getCommonPoolParallelism() * 2);
+    }
+
+    public SegmentedDFPWMOutputStream(OutputStream out, boolean newdfpwm, int segmentSize, int warmupSize,
+                                      ExecutorService pool, int maxInFlight) {
+        super(out);
+        this.newdfpwm = newdfpwm;
+        this.warmup = warmupSize & ~7;
+        this.pool = pool;
+        this.maxInFlight = Math.max(maxInFlight, 1);
+        this.segment = new byte[warmup + (segmentSize & ~7)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        segment[position++] = (byte) b;
+        if (position == segment.length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, segment.length - position);
+            System.arraycopy(b, off, segment, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            if (position == segment.length) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Encodes the remaining samples and waits for all segments to be written. Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+
+        try {
+            if (position > start) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(false));
+            pending.clear();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        var pcm = segment;
+        var from = start;
+        var to = position;
+        pending.add(pool.submit(() -> encode(pcm, from, to)));
+        if (finished) return;
+
+        // the tail of this segment is the warm-up of the next one
+        segment = new byte[pcm.length];
+        System.arraycopy(pcm, to - warmup, segment, 0, warmup);
+        start = warmup;
+        position = warmup;
+
+        while (pending.size() >= maxInFlight) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an encoded segment.");
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding a segment failed.", e.getCause());
+        }
+    }
+
+    private byte[] encode(byte[] pcm, int from, int to) {
+        var encoder = DFPWMEncoder.create(newdfpwm);
+        if (from > 0) {
+            encoder.compress(new byte[from / 8], pcm, 0, 0, from / 8);
+        }
+
+        // samples past the end of the final segment are zeroed, which pads its last byte with silence
+        var dfpwm = new byte[(to - from + 7) / 8];
+        encoder.compress(dfpwm, pcm, 0, from, dfpwm.length);
+        return dfpwm;
+    }
+}
@@ -0,0 +1,140 @@
+package space.alula.tapebot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares {@link SegmentedDFPWMOutputStream} against the sequential encoder and reports how many bits differ
+ * around the segment boundaries.
+ * <p>
+ * Usage: {@code java -cp tapebot.jar space.alula.tapebot.SegmentedEncoderHarness [pcm file] [segment size] [warm-up size]},
+ * where the optional file contains raw signed 8-bit mono PCM. A synthetic signal is used without it.
+ */
+public class SegmentedEncoderHarness {
+    private SegmentedEncoderHarness() {
+        //
+    }
+
+    public static void main(String... args) throws IOException {
+        var pcm = args.length > 0 ? Files.readAllBytes(Path.of(args[0])) : syntheticSignal(48000, 300);
+        var segmentSize = args.length > 1 ? Integer.parseInt(args[1]) & ~7 : SegmentedDFPWMOutputStream.DEFAULT_SEGMENT_SIZE;
+        var warmupSize = args.length > 2 ? Integer.parseInt(args[2]) & ~7 : SegmentedDFPWMOutputStream.DEFAULT_WARMUP_SIZE;
+
+        for (var newdfpwm : new boolean[]{true, false}) {
+            var sequential = new ByteArrayOutputStream();
+            long sequentialTime = System.nanoTime();
+            try (var stream = new DFPWMOutputStream(sequential, DFPWMEncoder.create(newdfpwm))) {
+                stream.write(pcm);
+            }
+            sequentialTime = System.nanoTime() - sequentialTime;
+
+            var segmented = new ByteArrayOutputStream();
+            long segmentedTime = System.nanoTime();
+            try (var stream = new SegmentedDFPWMOutputStream(segmented, newdfpwm, segmentSize, warmupSize,
+                    ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 2)) {
+                stream.write(pcm);
+            }
+            segmentedTime = System.nanoTime() - segmentedTime;
+
+            report(newdfpwm ? "DFPWM1a" : "DFPWM (legacy)", pcm, sequential.toByteArray(), segmented.toByteArray(),
+                    segmentSize, warmupSize, sequentialTime, segmentedTime, newdfpwm);
+        }
+    }
+
+    private static void report(String name, byte[] pcm, byte[] expected, byte[] actual, int segmentSize, int warmupSize,
+                               long sequentialTime, long segmentedTime, boolean newdfpwm) {
+        int samples = pcm.length;
+        long differing = 0;
+        int boundaries = 0;
+        int affected = 0;
+        int worst = 0;
+        long resyncTotal = 0;
+
+        // the first segment also holds the first warm-up worth of samples, every later one starts warmupSize earlier
+        for (int boundary = warmupSize + segmentSize; boundary < samples; boundary += segmentSize) {
+            boundaries++;
+            int end = Math.min(boundary + segmentSize, samples);
+            int count = 0;
+            int last = -1;
+            for (int bit = boundary; bit < end; bit++) {
+                if (bitAt(expected, bit) != bitAt(actual, bit)) {
+                    count++;
+                    last = bit;
+                }
+            }
+
+            differing += count;
+            if (count > 0) {
+                affected++;
+                worst = Math.max(worst, count);
+                resyncTotal += last - boundary + 1;
+            }
+        }
+
+        System.out.printf("%s: %d samples, segment %d, warm-up %d%n", name, samples, segmentSize, warmupSize);
+        System.out.printf("  boundaries: %d, with differing bits: %d%n", boundaries, affected);
+        System.out.printf("  differing bits: %d total, %d worst boundary, bit error rate %.6f%%%n",
+                differing, worst, differing * 100.0 / samples);
+        System.out.printf("  mean samples until resync: %.1f%n", affected == 0 ? 0.0 : resyncTotal / (double) affected);
+
+        // differing bits don't necessarily mean audibly different output, so compare what a player would hear
+        var expectedAudio = decode(expected, newdfpwm);
+        var actualAudio = decode(actual, newdfpwm);
+        System.out.printf("  decoded SNR vs input: sequential %.2f dB, segmented %.2f dB%n",
+                snr(pcm, expectedAudio, samples), snr(pcm, actualAudio, samples));
+        System.out.printf("  decoded SNR of segmented vs sequential: %.2f dB%n", snr(expectedAudio, actualAudio, samples));
+        System.out.printf("  sequential: %.1f ms (%.1f Msamples/s), segmented: %.1f ms (%.1f Msamples/s)%n",
+                sequentialTime / 1e6, samples * 1e3 / sequentialTime, segmentedTime / 1e6, samples * 1e3 / segmentedTime);
+    }
+
+    private static byte[] decode(byte[] dfpwm, boolean newdfpwm) {
+        var pcm = new byte[dfpwm.length * 8];
+        new DFPWM(newdfpwm).decompress(pcm, dfpwm, 0, 0, dfpwm.length);
+        return pcm;
+    }
+
+    private static double snr(byte[] reference, byte[] signal, int samples) {
+        double power = 0;
+        double noise = 0;
+        for (int i = 0; i < samples; i++) {
+            double error = signal[i] - reference[i];
+            power += (double) reference[i] * reference[i];
+            noise += error * error;
+        }
+        return noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(power / noise);
+    }
+
+    private static int bitAt(byte[] dfpwm, int index) {
+        return (dfpwm[index >> 3] >> (index & 7)) & 1;
+    }
+
+    // alternating sections of a log sweep, a chord with noise and silence
+    private static byte[] syntheticSignal(int sampleRate, int seconds) {
+        var random = new Random(0);
+        var pcm = new byte[sampleRate * seconds];
+        double phase = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            double t = (double) i / sampleRate;
+            double value;
+            switch ((int) t / 10 % 3) {
+                case 0:
+                    phase += 2 * Math.PI * 20 * Math.pow(1000, (t % 10) / 10) / sampleRate;
+                    value = 100 * Math.sin(phase);
+                    break;
+                case 1:
+                    value = 50 * Math.sin(2 * Math.PI * 220 * t) + 30 * Math.sin(2 * Math.PI * 277 * t)
+                            + random.nextGaussian() * 20;
+                    break;
+                default:
+                    value = 0;
+                    break;
+            }
+            pcm[i] = (byte) Math.max(-128, Math.min(127, Math.round(value)));
+        }
+        return pcm;
+    }
+}
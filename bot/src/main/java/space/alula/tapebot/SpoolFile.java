@@ -0,0 +1,153 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary file which conversion output is streamed into, so it doesn't have to be held on the heap.
+ * Writes are buffered in a direct buffer and rejected once the file would grow past the limit.
+ * The file is deleted on {@link #close()}.
+ */
+public class SpoolFile implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SpoolFile.class);
+    private static final Path directory = Path.of(Env.getOrDefault("SPOOL_DIR", System.getProperty("java.io.tmpdir")));
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long limit;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+
+    public SpoolFile(long limit) throws IOException {
+        Files.createDirectories(directory);
+        this.path = Files.createTempFile(directory, "tapebot-", ".spool");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.limit = limit;
+    }
+
+    /**
+     * @return where temporary files are created, see {@code SPOOL_DIR}
+     */
+    static Path directory() {
+        return directory;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (size() + len > limit) {
+            throw new LimitExceededException();
+        }
+
+        while (len > 0) {
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public long size() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    /**
+     * @return stream writing into this file, closing it only flushes the file
+     */
+    public OutputStream outputStream() {
+        return new OutputStream() {
+            private final byte[] single = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                single[0] = (byte) b;
+                SpoolFile.this.write(single, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                SpoolFile.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                SpoolFile.this.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                SpoolFile.this.flush();
+            }
+        };
+    }
+
+    /**
+     * @return read-only view of everything written so far
+     */
+    public MappedByteBuffer map() throws IOException {
+        flush();
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.position());
+    }
+
+    /**
+     * Flushes and moves the file to its final location, it can't be written to afterwards.
+     */
+    public void moveTo(Path target) throws IOException {
+        flush();
+        channel.close();
+        try {
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // different file systems, copy it next to the target first so it still shows up there atomically
+            var temporary = Files.createTempFile(target.getParent(), "tapebot-", ".tmp");
+            Files.copy(path, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(path);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public File file() {
+        return path.toFile();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete spool file {}", path, e);
+        }
+    }
+
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException() {
+            super("Limit exceeded.");
+        }
+    }
+}
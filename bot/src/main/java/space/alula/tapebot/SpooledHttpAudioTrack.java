@@ -0,0 +1,42 @@
+package space.alula.tapebot;
+
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+import java.net.URI;
+
+/**
+ * HTTP track which is downloaded in parallel ranges before it's decoded, see {@link RangedDownload}. Servers which
+ * don't support ranges get streamed from like any other HTTP track.
+ */
+public class SpooledHttpAudioTrack extends HttpAudioTrack {
+    private final SafeHttpAudioSourceManager sourceManager;
+
+    public SpooledHttpAudioTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerTrackFactory,
+                                 SafeHttpAudioSourceManager sourceManager) {
+        super(trackInfo, containerTrackFactory, sourceManager);
+        this.sourceManager = sourceManager;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+        var stream = RangedDownload.fetch(sourceManager, new URI(trackInfo.identifier));
+        if (stream == null) {
+            super.process(localExecutor);
+            return;
+        }
+
+        try (stream) {
+            processDelegate((InternalAudioTrack) getContainerTrackFactory().createTrack(trackInfo, stream), localExecutor);
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return new SpooledHttpAudioTrack(trackInfo, getContainerTrackFactory(), sourceManager);
+    }
+}
@@ -0,0 +1,58 @@
+package space.alula.tapebot;
+
+import java.util.concurrent.TimeUnit;
+
+public class StringUtil {
+    private StringUtil() {
+        //
+    }
+
+    public static String codeEscape(String in) {
+        return (in.contains("`")) ? in.replace("`", "`") : in;
+    }
+
+    public static String prettyPeriod(long time) {
+        long secs = TimeUnit.MILLISECONDS.toSeconds(time) % 60;
+        long mins = TimeUnit.MILLISECONDS.toMinutes(time) % 60;
+        long hours = TimeUnit.MILLISECONDS.toHours(time);
+        return hours != 0 ? String.format("%02d:%02d:%02d", hours, mins, secs)
+                : String.format("%02d:%02d", mins, secs);
+    }
+
+    /**
+     * Parses a time like {@code 90}, {@code 1:30} or {@code 1:02:03.5}.
+     *
+     * @return the time in milliseconds
+     * @throws IllegalArgumentException if it's not a valid time
+     */
+    public static long parseTime(String time) {
+        var parts = time.split(":", -1);
+        if (parts.length > 3) {
+            throw new IllegalArgumentException("Invalid time: " + time);
+        }
+
+        try {
+            long millis = 0;
+            for (int i = 0; i < parts.length; i++) {
+                var last = i == parts.length - 1;
+                // no signs, exponents or the like, and every field after the first has to stay below 60
+                if (!parts[i].matches(last ? "\\d+(\\.\\d+)?" : "\\d+")) {
+                    throw new IllegalArgumentException("Invalid time: " + time);
+                }
+                var value = Double.parseDouble(parts[i]);
+                if (i > 0 && value >= 60 || value >= Long.MAX_VALUE / 1000) {
+                    throw new IllegalArgumentException("Invalid time: " + time);
+                }
+                var field = last ? Math.round(value * 1000) : Math.multiplyExact(Long.parseLong(parts[i]), 1000);
+                millis = Math.addExact(Math.multiplyExact(millis, 60), field);
+            }
+            return millis;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid time: " + time, e);
+        }
+    }
+
+    public static String fileName(String title, String extension) {
+        return title.replaceAll("[?\\s*]", "_") + extension;
+    }
+}
@@ -0,0 +1,144 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-size temporary file mapped into memory, which several tracks can be written into at once,
+ * each one into its own region. The file is deleted on {@link #close()}.
+ */
+public class TapeImage implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TapeImage.class);
+    // alternating bits, what DFPWM encodes silence as
+    public static final byte SILENCE = 0x55;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+
+    public TapeImage(int size) throws IOException {
+        Files.createDirectories(SpoolFile.directory());
+        this.path = Files.createTempFile(SpoolFile.directory(), "tapebot-", ".tape");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Computronics tape lengths are given in minutes, which hold more or less DFPWM depending on the sample rate.
+     */
+    public static int bytesPerMinute(int sampleRate) {
+        return 60 * sampleRate / 8;
+    }
+
+    public int size() {
+        return map.capacity();
+    }
+
+    /**
+     * @return stream writing into the given part of the image, anything past its end is dropped
+     */
+    public Region region(int offset, int length) {
+        return new Region(slice(offset, length));
+    }
+
+    /**
+     * Copies a whole file into the given part of the image.
+     *
+     * @return number of bytes copied, at most length
+     */
+    public int copy(Path file, int offset, int length) throws IOException {
+        var target = slice(offset, length);
+        try (var source = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (target.hasRemaining() && source.read(target) >= 0) {
+                //
+            }
+        }
+        return target.position();
+    }
+
+    public void fill(int offset, int length, byte value) {
+        var target = slice(offset, length);
+        while (target.hasRemaining()) {
+            target.put(value);
+        }
+    }
+
+    /**
+     * Writes all changes to the file, regions must not be written to anymore.
+     */
+    public void force() {
+        map.force();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public File file() {
+        return path.toFile();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete tape image {}", path, e);
+        }
+    }
+
+    // every region gets its own view, so they can be written from different threads
+    private ByteBuffer slice(int offset, int length) {
+        var view = map.duplicate();
+        view.position(offset).limit(offset + length);
+        return view.slice();
+    }
+
+    public static class Region extends OutputStream {
+        private final ByteBuffer buffer;
+        private long dropped;
+
+        private Region(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            if (buffer.hasRemaining()) {
+                buffer.put((byte) b);
+            } else {
+                dropped++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            dropped += len - n;
+        }
+
+        public int written() {
+            return buffer.position();
+        }
+
+        /**
+         * @return number of bytes which didn't fit into the region
+         */
+        public long dropped() {
+            return dropped;
+        }
+    }
+}
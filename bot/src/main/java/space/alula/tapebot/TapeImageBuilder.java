@@ -0,0 +1,219 @@
+package space.alula.tapebot;
+
+import com.mewna.catnip.entity.message.MessageOptions;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Fills a tape image with several tracks, one after another. Every track gets a region sized from its duration,
+ * the tracks are encoded straight into the memory-mapped image, a few at a time like a batch, and an index with the
+ * offset of every track is uploaded along with it.
+ */
+public class TapeImageBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(TapeImageBuilder.class);
+
+    private final CommandContext ctx;
+    private final List<AudioTrack> tracks;
+    private final ConversionOptions options;
+    private final TapeImage image;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final List<CompletableFuture<Void>> results;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AdmissionControl.Permit permit;
+
+    private TapeImageBuilder(CommandContext ctx, List<AudioTrack> tracks, ConversionOptions options, TapeImage image,
+                             int[] offsets, int[] lengths, AdmissionControl.Permit permit) {
+        this.ctx = ctx;
+        this.permit = permit;
+        this.tracks = tracks;
+        this.options = options;
+        this.image = image;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.results = tracks.stream().map(track -> new CompletableFuture<Void>()).collect(Collectors.toList());
+    }
+
+    public static void start(CommandContext ctx, int minutes, List<String> queries, long maxDuration) {
+        var options = ConversionOptions.defaults();
+        var bytesPerMinute = TapeImage.bytesPerMinute(options.sampleRate());
+        var size = (long) minutes * bytesPerMinute;
+        if (minutes <= 0 || size > ConverterThread.uploadLimit) {
+            ctx.error("Tapes have to be between 1 and " + ConverterThread.uploadLimit / bytesPerMinute
+                    + " minutes long!");
+            return;
+        }
+
+        var notes = new StringBuilder();
+        BatchConversion.resolve(queries, notes).thenAccept(tracks -> {
+            var maxMillis = TimeUnit.MINUTES.toMillis(maxDuration);
+            if (tracks.removeIf(track -> track.getInfo().isStream || track.getDuration() > maxMillis)) {
+                notes.append("\nSkipped streams and tracks longer than ").append(maxDuration).append(" minutes.");
+            }
+            if (tracks.isEmpty()) {
+                ctx.error("There's nothing to put on the tape." + notes);
+                return;
+            }
+            if (tracks.size() > BatchConversion.maxTracks) {
+                notes.append("\nOnly the first ").append(BatchConversion.maxTracks).append(" tracks are going onto the tape.");
+                tracks.subList(BatchConversion.maxTracks, tracks.size()).clear();
+            }
+
+            // the durations are known up front, so every track can get its place on the tape before decoding starts
+            var offsets = new int[tracks.size()];
+            var lengths = new int[tracks.size()];
+            long end = 0;
+            for (int i = 0; i < tracks.size(); i++) {
+                offsets[i] = (int) end;
+                lengths[i] = (int) ((tracks.get(i).getDuration() * options.sampleRate() + 7999) / 8000);
+                end += lengths[i];
+            }
+            if (end > size) {
+                var needed = (end + bytesPerMinute - 1) / bytesPerMinute;
+                ctx.error("These tracks need a tape of at least `" + needed + "` minutes, this one is `" + minutes + "` minutes long." + notes);
+                return;
+            }
+
+            // the whole tape is admitted as one conversion, so it isn't cut short by the burst limit halfway through
+            AdmissionControl.Permit permit;
+            try {
+                permit = Conversions.admission.admit(ctx.guild().idAsLong(), ctx.sender().idAsLong(), end);
+            } catch (AdmissionControl.Rejected e) {
+                ctx.error(e.getMessage());
+                return;
+            }
+
+            TapeImage image;
+            try {
+                image = new TapeImage((int) size);
+            } catch (IOException e) {
+                permit.release();
+                throw new IllegalStateException("Failed to create the tape image.", e);
+            }
+
+            ctx.success("Writing `" + tracks.size() + "` tracks onto a `" + minutes + "` minute tape, `"
+                    + StringUtil.prettyPeriod(end * 8000 / options.sampleRate()) + "` used." + notes);
+            new TapeImageBuilder(ctx, tracks, options, image, offsets, lengths, permit).run();
+        }).exceptionally(e -> {
+            logger.error("Building a tape image failed!", e);
+            ctx.error("Error while building the tape: `" + e.getMessage() + "`");
+            return null;
+        });
+    }
+
+    private void run() {
+        for (int i = 0; i < Math.min(BatchConversion.window, tracks.size()); i++) {
+            submitNext();
+        }
+
+        CompletableFuture.allOf(results.stream().map(result -> result.exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new))
+                .thenRun(() -> {
+                    permit.release();
+                    deliver();
+                });
+    }
+
+    // keeps the window full, each finished track starts the next one
+    private void submitNext() {
+        int index = next.getAndIncrement();
+        if (index < tracks.size()) {
+            results.get(index).whenComplete((ignored, e) -> submitNext());
+            submit(index);
+        }
+    }
+
+    private void submit(int index) {
+        var track = tracks.get(index);
+        var result = results.get(index);
+
+        // finished conversions are copied from the cache instead of decoding the track again
+        var key = ConversionCache.key(track, options);
+        var cached = Conversions.cache.get(key);
+        if (cached != null) {
+            try {
+                pad(index, image.copy(cached, offsets[index], lengths[index]));
+                result.complete(null);
+                return;
+            } catch (IOException e) {
+                logger.warn("Failed to copy {} from the cache, converting it again", cached, e);
+            } finally {
+                Conversions.cache.release(key);
+            }
+        }
+
+        try {
+            Conversions.scheduler.submit(ctx.guild().idAsLong(), ctx.sender().idAsLong(), () -> {
+                try {
+                    var region = image.region(offsets[index], lengths[index]);
+                    ConverterThread.convert(track, options, region);
+                    if (region.dropped() > 0) {
+                        logger.debug("Dropped {} bytes at the end of {}", region.dropped(), track.getInfo().title);
+                    }
+                    pad(index, region.written());
+                    result.complete(null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(new IllegalStateException("Conversion was interrupted."));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    // the duration is only an estimate, whatever the track didn't fill is left silent
+    private void pad(int index, int written) {
+        image.fill(offsets[index] + written, lengths[index] - written, TapeImage.SILENCE);
+    }
+
+    private void deliver() {
+        var index = new StringBuilder("# offset\tlength\ttitle\n");
+        var failures = new StringBuilder();
+        int written = 0;
+        for (int i = 0; i < tracks.size(); i++) {
+            var title = tracks.get(i).getInfo().title;
+            var result = results.get(i);
+            if (result.isCompletedExceptionally()) {
+                pad(i, 0);
+                failures.append("\n`").append(StringUtil.codeEscape(title)).append("`: ")
+                        .append(Commands.failureMessage(result.handle((v, e) -> e).join()));
+            } else {
+                written++;
+            }
+            index.append(offsets[i]).append('\t').append(lengths[i]).append('\t')
+                    .append(title.replaceAll("\\s", " ")).append('\n');
+        }
+
+        if (written == 0) {
+            image.close();
+            ctx.error("None of the tracks could be converted." + failures);
+            return;
+        }
+
+        image.force();
+        var start = System.nanoTime();
+        var content = CommandContext.SUCCESS_ICON + "  |  " + ctx.sender().asMention() + ", here's your tape, `"
+                + written + "` of `" + tracks.size() + "` tracks written." + failures;
+        ctx.send(new MessageOptions()
+                .content(content)
+                .addFile("tape.dfpwm", image.file())
+                .addFile("tape-index.txt", index.toString().getBytes(StandardCharsets.UTF_8)))
+                .whenComplete((message, e) -> {
+                    Metrics.upload.since(start);
+                    image.close();
+                });
+    }
+}
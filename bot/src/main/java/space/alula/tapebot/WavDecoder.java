@@ -0,0 +1,115 @@
+package space.alula.tapebot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Turns DFPWM back into 8-bit mono WAV, one chunk at a time, so neither the input nor the output is ever held
+ * in memory as a whole.
+ */
+public class WavDecoder {
+    public static final int HEADER_SIZE = 44;
+    private static final int chunkSize = 4096;
+    private static final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private WavDecoder() {
+        //
+    }
+
+    /**
+     * Downloads a DFPWM file and decodes it into a spool file, which the caller has to close.
+     */
+    public static SpoolFile download(String url, long length, boolean newdfpwm, int sampleRate)
+            throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Download failed with status " + response.statusCode() + ".");
+        }
+
+        var spool = new SpoolFile(HEADER_SIZE + length * 8);
+        try (var in = response.body(); var out = spool.outputStream()) {
+            decode(in, length, out, newdfpwm, sampleRate);
+        } catch (IOException e) {
+            spool.close();
+            throw e;
+        }
+        return spool;
+    }
+
+    /**
+     * Decodes exactly length bytes of DFPWM from in and writes them to out as a WAV file.
+     */
+    public static void decode(InputStream in, long length, OutputStream out, boolean newdfpwm, int sampleRate)
+            throws IOException {
+        writeHeader(out, sampleRate, length * 8);
+
+        var decoder = new DFPWM(newdfpwm);
+        var dfpwm = new byte[chunkSize];
+        var pcm = new byte[chunkSize * 8];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.readNBytes(dfpwm, 0, (int) Math.min(chunkSize, remaining));
+            if (read == 0) {
+                throw new IOException("File ended " + remaining + " bytes early.");
+            }
+
+            decoder.decompress(pcm, dfpwm, 0, 0, read);
+            // WAV stores 8-bit samples unsigned
+            for (int i = 0; i < read * 8; i++) {
+                pcm[i] ^= 0x80;
+            }
+            out.write(pcm, 0, read * 8);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Writes the header of an 8-bit mono PCM WAV file holding the given number of samples.
+     */
+    public static void writeHeader(OutputStream out, int sampleRate, long samples) throws IOException {
+        var header = new byte[HEADER_SIZE];
+        putAscii(header, 0, "RIFF");
+        putInt(header, 4, (int) (36 + samples));
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putInt(header, 16, 16);
+        // PCM, mono
+        putShort(header, 20, 1);
+        putShort(header, 22, 1);
+        putInt(header, 24, sampleRate);
+        // byte rate and block alignment, one byte per sample
+        putInt(header, 28, sampleRate);
+        putShort(header, 32, 1);
+        putShort(header, 34, 8);
+        putAscii(header, 36, "data");
+        putInt(header, 40, (int) samples);
+        out.write(header);
+    }
+
+    private static void putAscii(byte[] dest, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            dest[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void putInt(byte[] dest, int offset, int value) {
+        putShort(dest, offset, value);
+        putShort(dest, offset + 2, value >>> 16);
+    }
+
+    private static void putShort(byte[] dest, int offset, int value) {
+        dest[offset] = (byte) value;
+        dest[offset + 1] = (byte) (value >>> 8);
+    }
+}
@@ -0,0 +1,113 @@
+package space.alula.tapebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts jobs dispatched by gateways. Only as many jobs are taken as there are free converter threads,
+ * everything else stays queued on the gateway for other workers to pick up.
+ * <p>
+ * Run standalone with {@code java -jar tapebot.jar worker}, which connects to {@code WORKER_GATEWAY_URL}.
+ */
+public class Worker {
+    private static final Logger logger = LoggerFactory.getLogger(Worker.class);
+    private static final long pollTimeout = TimeUnit.SECONDS.toMillis(20);
+    private static final long retryDelay = TimeUnit.SECONDS.toMillis(5);
+
+    private final JobSource source;
+    private final ConversionScheduler scheduler;
+    private final Semaphore slots;
+
+    public Worker(JobSource source, int threads) {
+        this.source = source;
+        this.scheduler = new ConversionScheduler(threads, threads);
+        this.slots = new Semaphore(threads);
+    }
+
+    public static void main(String... args) {
+        var threads = Integer.parseInt(Env.getOrDefault("CONVERTER_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        var source = new HttpJobSource(Env.require("WORKER_GATEWAY_URL"), Env.require("WORKER_SECRET"));
+        logger.info("Taking jobs from {} with {} converter threads", Env.get("WORKER_GATEWAY_URL"), threads);
+        new Worker(source, threads).run();
+    }
+
+    /**
+     * Takes jobs on a background thread.
+     */
+    public void start() {
+        var thread = new Thread(this::run, "Job puller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                slots.acquire();
+                var data = next();
+                if (data == null) {
+                    slots.release();
+                    continue;
+                }
+
+                var job = RemoteJob.fromBytes(data);
+                // never rejected, there are no more jobs taken than threads to run them
+                scheduler.submit(job.guildId(), job.userId(), () -> {
+                    try {
+                        reply(convert(job));
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // without an id there's nobody to reply to, the gateway times the job out
+                logger.error("Received a job which can't be read!", e);
+                slots.release();
+            }
+        }
+    }
+
+    private byte[] next() throws InterruptedException {
+        try {
+            return source.next(pollTimeout, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            logger.warn("Failed to get the next job, retrying in {} ms", retryDelay, e);
+            Thread.sleep(retryDelay);
+            return null;
+        }
+    }
+
+    private static RemoteResult convert(RemoteJob job) {
+        try (var spool = new SpoolFile(ConverterThread.uploadLimit)) {
+            var track = MusicResolver.decode(job.track());
+            logger.info("Starting conversion of {} [{}] for a gateway...", track.getInfo().title, job.id());
+            ConverterThread.convert(track, job.options(), spool.outputStream());
+
+            var mapped = spool.map();
+            var data = new byte[mapped.remaining()];
+            mapped.get(data);
+            return RemoteResult.success(job.id(), data);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.warn("Conversion of {} failed!", job.id(), e);
+            return RemoteResult.failure(job.id(), Commands.failureMessage(e));
+        }
+    }
+
+    private void reply(RemoteResult result) {
+        try {
+            source.reply(result.toBytes());
+        } catch (IOException e) {
+            logger.error("Failed to send the result of {} back!", result.id(), e);
+        }
+    }
+}
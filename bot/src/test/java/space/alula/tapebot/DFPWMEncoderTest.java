@@ -0,0 +1,98 @@
+package space.alula.tapebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The specialized encoders have to stay bit-identical to {@link DFPWM#compress}, whatever chunks they're fed in.
+ * Expected outputs were produced by {@link DFPWM}: the first 16 bytes and a CRC32 of the whole output.
+ */
+class DFPWMEncoderTest {
+    private static final int SAMPLES = 8192;
+
+    @Test
+    void sweep() {
+        var pcm = new byte[SAMPLES];
+        double phase = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            phase += 2 * Math.PI * (20 + 8000.0 * i / SAMPLES) / 32768;
+            pcm[i] = (byte) Math.round(Math.sin(phase) * 100);
+        }
+
+        check(pcm, true, "eeeefbbbfbbddfdfbffffef7efeff7bd", 0xc5fedc2cL);
+        check(pcm, false, "ea6a6b6ddbb6ed767777efbdf7de7bef", 0xb08a2c6fL);
+    }
+
+    @Test
+    void noise() {
+        var pcm = new byte[SAMPLES];
+        new Random(1234).nextBytes(pcm);
+
+        check(pcm, true, "8292f00d8d3f98f6e694bd48a9a9d41f", 0x03b71112L);
+        check(pcm, false, "829af80c8b979a76e6d4ad48a9a9d40f", 0x59218940L);
+    }
+
+    @Test
+    void silence() {
+        var pcm = new byte[SAMPLES];
+
+        check(pcm, true, "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", 0x3c6f327dL);
+        check(pcm, false, "52555555555555555555555555555555", 0xed86be69L);
+    }
+
+    @Test
+    void saturated() {
+        var pcm = new byte[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            pcm[i] = (byte) (((i / 37) & 1) == 0 ? 127 : -128);
+        }
+
+        check(pcm, true, "ffffffff1f00000000fcffffff7f0000", 0xeaef1976L);
+        check(pcm, false, "ffffffff1f00000000fcffffff7f0000", 0xeaef1976L);
+    }
+
+    private static void check(byte[] pcm, boolean newDfpwm, String head, long crc) {
+        var reference = new byte[pcm.length / 8];
+        new DFPWM(newDfpwm).compress(reference, pcm, 0, 0, reference.length);
+        assertEquals(head, hex(reference, 16), "reference output changed");
+        assertEquals(crc, crc32(reference), "reference output changed");
+
+        var random = new Random(newDfpwm ? 1 : 2);
+        for (int round = 0; round < 8; round++) {
+            var encoder = DFPWMEncoder.create(newDfpwm);
+            // offset into the buffers, so offsets are exercised too
+            var out = new byte[reference.length + 3];
+            var in = new byte[pcm.length + 5];
+            System.arraycopy(pcm, 0, in, 5, pcm.length);
+
+            for (int done = 0; done < reference.length; ) {
+                int len = Math.min(reference.length - done, 1 + random.nextInt(64));
+                encoder.compress(out, in, 3 + done, 5 + done * 8, len);
+                done += len;
+            }
+
+            var encoded = new byte[reference.length];
+            System.arraycopy(out, 3, encoded, 0, encoded.length);
+            assertArrayEquals(reference, encoded, (newDfpwm ? "DFPWM1a" : "legacy") + " output differs in round " + round);
+        }
+    }
+
+    private static String hex(byte[] data, int length) {
+        var builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(String.format("%02x", data[i] & 0xff));
+        }
+        return builder.toString();
+    }
+
+    private static long crc32(byte[] data) {
+        var crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
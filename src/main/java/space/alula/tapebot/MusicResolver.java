@@ -1,64 +0,0 @@
-package space.alula.tapebot;
-
-import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
-import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.source.bandcamp.BandcampAudioSourceManager;
-import com.sedmelluq.discord.lavaplayer.source.beam.BeamAudioSourceManager;
-import com.sedmelluq.discord.lavaplayer.source.soundcloud.SoundCloudAudioSourceManager;
-import com.sedmelluq.discord.lavaplayer.source.vimeo.VimeoAudioSourceManager;
-import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
-import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
-import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
-
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
-
-public class MusicResolver {
-    public static final AudioPlayerManager playerManager;
-
-    static {
-        playerManager = new DefaultAudioPlayerManager();
-        playerManager.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_PCM_S16_LE);
-        playerManager.setFrameBufferDuration(500);
-        playerManager.registerSourceManager(new YoutubeAudioSourceManager());
-        playerManager.registerSourceManager(new SoundCloudAudioSourceManager());
-        playerManager.registerSourceManager(new VimeoAudioSourceManager());
-        playerManager.registerSourceManager(new BandcampAudioSourceManager());
-        playerManager.registerSourceManager(new BeamAudioSourceManager());
-        playerManager.registerSourceManager(new SafeHttpAudioSourceManager());
-    }
-
-    public static CompletionStage<AudioTrack> resolve(String query) {
-        var future = new CompletableFuture<AudioTrack>();
-        if (query.startsWith("<") && query.endsWith(">")) {
-            query = query.substring(1, query.length() - 1);
-        }
-
-        playerManager.loadItem(query, new AudioLoadResultHandler() {
-            @Override
-            public void trackLoaded(AudioTrack audioTrack) {
-                future.complete(audioTrack);
-            }
-
-            @Override
-            public void playlistLoaded(AudioPlaylist audioPlaylist) {
-                future.complete(audioPlaylist.getTracks().get(0));
-            }
-
-            @Override
-            public void noMatches() {
-                future.completeExceptionally(new IllegalArgumentException("Cannot find anything for specified query!"));
-            }
-
-            @Override
-            public void loadFailed(FriendlyException e) {
-                future.completeExceptionally(e);
-            }
-        });
-
-        return future;
-    }
-}